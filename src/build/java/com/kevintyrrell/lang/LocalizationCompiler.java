@@ -0,0 +1,283 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.lang;
+
+import org.json.simple.parser.ContainerFactory;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Build-time compiler which turns Localization.json into Java sources.
+ *
+ * Two classes are generated into the `com.kevintyrrell.lang` package:
+ *  * LocaleKey: one constant per localized path, e.g. `commands/add/hint` -> COMMANDS_ADD_HINT.
+ *  * LocaleTables: one packed String array per locale, indexed by LocaleKey#ordinal().
+ *
+ * The build fails if any locale is missing a path which another locale defines,
+ * or if a leaf value of the JSON file is not a String.
+ *
+ * Usage: LocalizationCompiler [Localization.json] [output source directory]
+ *
+ * @since 3.0
+ */
+public final class LocalizationCompiler
+{
+    private static final String PACKAGE = "com.kevintyrrell.lang";
+
+    private static final String LICENSE = String.join("\n",
+            "/*",
+            " *     Application which tracks Runeword progress in the video game Diablo 2.",
+            " *     Copyright (C) 2021  Kevin Tyrrell",
+            " *",
+            " *     This program is free software: you can redistribute it and/or modify",
+            " *     it under the terms of the GNU General Public License as published by",
+            " *     the Free Software Foundation, either version 3 of the License, or",
+            " *     (at your option) any later version.",
+            " *",
+            " *     This program is distributed in the hope that it will be useful,",
+            " *     but WITHOUT ANY WARRANTY; without even the implied warranty of",
+            " *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the",
+            " *     GNU General Public License for more details.",
+            " *",
+            " *     You should have received a copy of the GNU General Public License",
+            " *     along with this program.  If not, see <https://www.gnu.org/licenses/>.",
+            " */", "");
+
+    private LocalizationCompiler() { }
+
+    public static void main(final String[] args) throws IOException
+    {
+        if (args.length != 2)
+            throw new IllegalArgumentException("Usage: LocalizationCompiler [Localization.json] [output directory]");
+
+        final Map<String, Map<String, String>> locales = new LinkedHashMap<>();
+        parse(Paths.get(args[0])).forEach((locale, root) ->
+        {
+            final Map<String, String> paths = new LinkedHashMap<>();
+            flatten(root, "", paths);
+            locales.put(locale.toString(), paths);
+        });
+        if (locales.isEmpty())
+            throw new IllegalStateException("Localization file defines no locales: " + args[0]);
+
+        /* Every locale must provide exactly the same set of paths. */
+        final Set<String> keys = new LinkedHashSet<>();
+        locales.values().forEach(paths -> keys.addAll(paths.keySet()));
+        final List<String> errors = new ArrayList<>();
+        locales.forEach((locale, paths) -> keys.stream()
+                .filter(key -> !paths.containsKey(key))
+                .forEach(key -> errors.add(String.format("Locale \"%s\" is missing path: %s", locale, key))));
+        if (!errors.isEmpty())
+            throw new IllegalStateException(String.join("\n", errors));
+
+        final Path dir = Paths.get(args[1], PACKAGE.split("\\."));
+        Files.createDirectories(dir);
+        writeKeys(dir.resolve("LocaleKey.java"), keys);
+        writeTables(dir.resolve("LocaleTables.java"), keys, locales);
+    }
+
+    /* Parses the localization file, preserving the document order of every object. */
+    private static Map<?, ?> parse(final Path json) throws IOException
+    {
+        final ContainerFactory ordered = new ContainerFactory()
+        {
+            @Override public Map createObjectContainer()
+            {
+                return new LinkedHashMap();
+            }
+
+            @Override public List creatArrayContainer()
+            {
+                return new ArrayList();
+            }
+        };
+        try (final Reader reader = Files.newBufferedReader(json, StandardCharsets.UTF_8))
+        {
+            return (Map<?, ?>)new JSONParser().parse(reader, ordered);
+        }
+        catch (final ParseException e)
+        {
+            throw new IllegalStateException("Localization file is malformed: " + json, e);
+        }
+    }
+
+    /* Collects every String leaf of the JSON structure, keyed by its slash separated path. */
+    private static void flatten(final Object current, final String prefix, final Map<String, String> paths)
+    {
+        if (current instanceof Map)
+            ((Map<?, ?>)current).forEach((k, v) -> flatten(v, prefix + k + '/', paths));
+        else if (current instanceof List)
+        {
+            final List<?> list = (List<?>)current;
+            for (int i = 0; i < list.size(); i++)
+                flatten(list.get(i), prefix + i + '/', paths);
+        }
+        else if (current instanceof String)
+            paths.put(prefix.substring(0, prefix.length() - 1), (String)current);
+        else throw new IllegalStateException("Localized value must be a String: " + prefix);
+    }
+
+    private static void writeKeys(final Path file, final Set<String> keys) throws IOException
+    {
+        final Set<String> constants = new HashSet<>();
+        final StringBuilder sb = new StringBuilder(LICENSE)
+                .append("\npackage ").append(PACKAGE).append(";\n\n")
+                .append("import com.kevintyrrell.model.util.EnumExtendable;\n\n")
+                .append("/**\n")
+                .append(" * Defines every localized path of Localization.json.\n")
+                .append(" *\n")
+                .append(" * Generated by LocalizationCompiler at build time. Do not edit.\n")
+                .append(" *\n")
+                .append(" * @since 3.0\n")
+                .append(" */\n")
+                .append("public enum LocaleKey\n{\n");
+        final Iterator<String> iter = keys.iterator();
+        while (iter.hasNext())
+        {
+            final String key = iter.next(), constant = constantName(key);
+            if (!constants.add(constant))
+                throw new IllegalStateException("Localized paths collide on constant name: " + constant);
+            sb.append("    ").append(constant).append('(').append(literal(key)).append(')')
+                    .append(iter.hasNext() ? ",\n" : ";\n");
+        }
+        sb.append("\n")
+                .append("    /* Slash separated path through the JSON file. */\n")
+                .append("    private final String path;\n\n")
+                .append("    /**\n")
+                .append("     * Extension of the enum, keyed by path.\n")
+                .append("     */\n")
+                .append("    public static final EnumExtendable<LocaleKey> extension = new EnumExtendable<>(LocaleKey.class)\n")
+                .append("    {\n")
+                .append("        @Override protected String stringMapKeyer(final LocaleKey value)\n")
+                .append("        {\n")
+                .append("            return value.path;\n")
+                .append("        }\n")
+                .append("    };\n\n")
+                .append("    LocaleKey(final String path)\n")
+                .append("    {\n")
+                .append("        this.path = path;\n")
+                .append("    }\n\n")
+                .append("    /**\n")
+                .append("     * @return Path through the fields of the JSON file.\n")
+                .append("     */\n")
+                .append("    public String getPath()\n")
+                .append("    {\n")
+                .append("        return path;\n")
+                .append("    }\n\n")
+                .append("    /**\n")
+                .append("     * @return String representation of the key.\n")
+                .append("     */\n")
+                .append("    @Override public String toString()\n")
+                .append("    {\n")
+                .append("        return path;\n")
+                .append("    }\n")
+                .append("}\n");
+        write(file, sb);
+    }
+
+    private static void writeTables(final Path file, final Set<String> keys,
+                                    final Map<String, Map<String, String>> locales) throws IOException
+    {
+        final StringBuilder sb = new StringBuilder(LICENSE)
+                .append("\npackage ").append(PACKAGE).append(";\n\n")
+                .append("/**\n")
+                .append(" * Packed string tables of every locale, indexed by LocaleKey#ordinal().\n")
+                .append(" *\n")
+                .append(" * Generated by LocalizationCompiler at build time. Do not edit.\n")
+                .append(" *\n")
+                .append(" * @since 3.0\n")
+                .append(" */\n")
+                .append("final class LocaleTables\n{\n")
+                .append("    private LocaleTables() { }\n");
+        locales.forEach((locale, paths) ->
+        {
+            sb.append("\n    private static final String[] ").append(constantName(locale)).append(" = {\n");
+            keys.forEach(key -> sb.append("            ").append(literal(paths.get(key))).append(",\n"));
+            sb.append("    };\n");
+        });
+        sb.append("\n")
+                .append("    /**\n")
+                .append("     * @param locale String representation of the locale.\n")
+                .append("     * @return Table of the locale, or null if the locale is not defined.\n")
+                .append("     */\n")
+                .append("    static String[] forLocale(final String locale)\n")
+                .append("    {\n")
+                .append("        switch (locale)\n")
+                .append("        {\n");
+        locales.keySet().forEach(locale -> sb.append("            case ").append(literal(locale))
+                .append(": return ").append(constantName(locale)).append(";\n"));
+        sb.append("            default: return null;\n")
+                .append("        }\n")
+                .append("    }\n")
+                .append("}\n");
+        write(file, sb);
+    }
+
+    /* Converts a path such as `commands/add/hint` into COMMANDS_ADD_HINT. */
+    private static String constantName(final String path)
+    {
+        final StringBuilder sb = new StringBuilder(path.length() + 1);
+        if (!Character.isJavaIdentifierStart(path.charAt(0))) sb.append('_');
+        for (int i = 0; i < path.length(); i++)
+        {
+            final char c = path.charAt(i);
+            sb.append(Character.isJavaIdentifierPart(c) ? Character.toUpperCase(c) : '_');
+        }
+        return sb.toString();
+    }
+
+    /* Converts a String into an escaped Java String literal. */
+    private static String literal(final String value)
+    {
+        final StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            final char c = value.charAt(i);
+            switch (c)
+            {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20 || c > 0x7E) sb.append(String.format("\\u%04x", (int)c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /* Writes the file only if its content changed, to avoid needless recompilation. */
+    private static void write(final Path file, final CharSequence content) throws IOException
+    {
+        final byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+        if (Files.exists(file) && Arrays.equals(bytes, Files.readAllBytes(file))) return;
+        Files.write(file, bytes);
+    }
+}
@@ -18,7 +18,33 @@
 
 package com.kevintyrrell;
 
+import com.kevintyrrell.api.ApiServer;
+import com.kevintyrrell.api.SharedTracker;
+import com.kevintyrrell.daemon.Daemon;
+import com.kevintyrrell.daemon.DaemonClient;
+import com.kevintyrrell.model.diablo.rune.RuneMap;
+import com.kevintyrrell.model.diablo.runeword.Runeword;
+import com.kevintyrrell.model.diablo.runeword.RunewordFilter;
+import com.kevintyrrell.model.diablo.runeword.RunewordLoader;
+import com.kevintyrrell.model.diablo.runeword.RunewordSorter;
+import com.kevintyrrell.model.profile.ProfileRepository;
+import com.kevintyrrell.model.util.SaveScheduler;
+import com.kevintyrrell.view.BatchMode;
+import com.kevintyrrell.view.RunewordTable;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Application entry point
@@ -27,8 +53,103 @@ import java.time.LocalDate;
  */
 public final class D2RunewordTracker
 {
-    public static void main(final String[] args)
+    /* Argument which enables batch mode, optionally followed by a file of commands. */
+    private static final String BATCH_ARGUMENT = "--batch";
+    /* Argument which runs the daemon until it is interrupted. */
+    private static final String DAEMON_ARGUMENT = "--daemon";
+    /* Argument which forwards commands from standard input to the daemon, optionally followed by a player id. */
+    private static final String CLIENT_ARGUMENT = "--client";
+    /* Argument which serves the HTTP API on the loopback address, optionally followed by a port. */
+    private static final String SERVE_ARGUMENT = "--serve";
+
+    /* Player whose profile the client uses when none is specified. */
+    private static final String DEFAULT_PLAYER = "default";
+    /* Maximum number of profiles which the daemon keeps warm. */
+    private static final int DAEMON_PROFILES = 64;
+    /* Port on which the HTTP API listens when none is specified. */
+    private static final int DEFAULT_API_PORT = 8080;
+    /* Maximum delay, in milliseconds, between an API change and its save. */
+    private static final long API_SAVE_DEBOUNCE = 250;
+
+    public static void main(final String[] args) throws IOException, InterruptedException
+    {
+        if (args.length == 0) return;
+        switch (args[0])
+        {
+            case BATCH_ARGUMENT:
+                System.exit(runBatch(args.length > 1 ? Files.newBufferedReader(Paths.get(args[1]))
+                        : new InputStreamReader(System.in, Charset.defaultCharset())) ? 0 : 1);
+                break;
+            case DAEMON_ARGUMENT:
+                final Daemon daemon = new Daemon(new ProfileRepository(
+                        new ArrayList<>(new RunewordLoader().stringMap().values()), DAEMON_PROFILES));
+                Runtime.getRuntime().addShutdownHook(new Thread(daemon::close));
+                daemon.join();
+                break;
+            case CLIENT_ARGUMENT:
+                new DaemonClient().send(args.length > 1 ? args[1] : DEFAULT_PLAYER,
+                        new InputStreamReader(System.in, Charset.defaultCharset()), System.out);
+                break;
+            case SERVE_ARGUMENT:
+                final ApiServer server = serve(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_API_PORT);
+                Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+                System.out.println("Serving on port " + server.getPort());
+                break;
+        }
+    }
+
+    /**
+     * Applies commands from the input as one delta, then saves and renders once.
+     *
+     * @param in Input of commands, one per line.
+     * @return true if every command was applied and saved.
+     * @throws IOException If the input could not be read.
+     */
+    private static boolean runBatch(final Reader in) throws IOException
+    {
+        SaveScheduler.recover(""); // Completes any save which the API server left interrupted.
+        final RuneMap runes = new RuneMap();
+        runes.restore();
+        final BatchMode batch = new BatchMode(runes);
+        try (in)
+        {
+            batch.run(in);
+        }
+        batch.getErrors().forEach(System.err::println);
+        final boolean saved = runes.save();
+
+        final RunewordFilter filter = new RunewordFilter(
+                new ArrayList<>(new RunewordLoader().stringMap().values()), runes);
+        filter.restore();
+        final OutputStreamWriter out = new OutputStreamWriter(System.out, Charset.defaultCharset());
+        new RunewordTable(runes).render(out, filter, new RunewordSorter(runes));
+        System.out.println(batch.summary());
+        return saved && batch.getErrors().isEmpty();
+    }
+
+    /**
+     * Starts the HTTP API over the saved runes and filter, with one request thread per processor.
+     *
+     * @param port Port on which to listen; 0 selects an ephemeral port.
+     * @return Running server.
+     * @throws IOException If the server could not listen on the port.
+     */
+    private static ApiServer serve(final int port) throws IOException
     {
+        /* Responses are small; with Nagle's algorithm each would wait on the client's delayed ACK.
+         * Set before the first server is created, as the JDK reads it once; a launcher flag takes precedence. */
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        final Map<String, Runeword> runewords = new RunewordLoader().stringMap();
+        /* Constructed first, as it completes any interrupted save before the files are restored. */
+        final SaveScheduler saver = new SaveScheduler(API_SAVE_DEBOUNCE, TimeUnit.MILLISECONDS).closeOnShutdown();
+        final RuneMap runes = new RuneMap();
+        runes.restore();
+        final RunewordFilter filter = new RunewordFilter(new ArrayList<>(runewords.values()), runes);
+        filter.restore();
+        return new ApiServer(new SharedTracker(runes, filter, runewords, saver),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                Runtime.getRuntime().availableProcessors());
     }
 
     /**
@@ -0,0 +1,330 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.api;
+
+import com.kevintyrrell.lang.LocaleContext;
+import com.kevintyrrell.lang.LocaleKey;
+import com.kevintyrrell.model.diablo.ItemType;
+import com.kevintyrrell.model.diablo.rune.Rune;
+import com.kevintyrrell.model.diablo.runeword.Runeword;
+import com.kevintyrrell.model.diablo.runeword.RunewordSorter;
+import com.kevintyrrell.view.CommandTokenizer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines an embedded HTTP API over a SharedTracker, built on the JDK's HTTP server.
+ *
+ * Endpoints, all of which reply in JSON:
+ *  GET  /runes                  Runes owned, by name.
+ *  POST /runes/add              Adds the runes of the body, such as `tir ort3`.
+ *  POST /runes/toss             Tosses the runes of the body; none are tossed if any are insufficient.
+ *  POST /filters/{name}         Filters or restores a runeword or item type.
+ *  GET  /runewords?sort={sort}  Runewords which pass the filter, sorted; `rarity` by default.
+ *  GET  /runewords/{name}       Focuses a single runeword.
+ *
+ * Malformed requests are answered with status 400 and an `error` message, and bodies larger than
+ * {@value #MAX_BODY} bytes with status 413.
+ *
+ * The JDK's server delays small responses under Nagle's algorithm unless launched with
+ * `-Dsun.net.httpserver.nodelay=true`; the property is JVM-wide, so it is left to the launcher.
+ *
+ * @since 3.0
+ */
+public final class ApiServer implements Closeable
+{
+    /* HTTP status codes. */
+    private static final int OK = 200, BAD_REQUEST = 400, NOT_FOUND = 404, BAD_METHOD = 405, TOO_LARGE = 413;
+    /* Maximum length of a request body, in bytes; bodies are lists of runes, which are far shorter. */
+    private static final int MAX_BODY = 4096;
+    /* Maximum number of queued connections. */
+    private static final int BACKLOG = 128;
+    /* Sort of runewords when none is requested. */
+    private static final RunewordSorter.Sort DEFAULT_SORT = RunewordSorter.Sort.BY_RARITY;
+
+    private final SharedTracker tracker;
+    private final LocaleContext context;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Starts serving the API.
+     *
+     * @param tracker Tracker which the API reads and modifies.
+     * @param address Address on which to listen; port 0 selects an ephemeral port.
+     * @param threads Number of threads which handle requests.
+     * @throws IOException If the server could not listen on the address.
+     */
+    public ApiServer(final SharedTracker tracker, final InetSocketAddress address, final int threads)
+            throws IOException
+    {
+        if (threads <= 0) throw new IllegalArgumentException("Number of threads must be positive.");
+        this.tracker = requireNonNull(tracker);
+        context = LocaleContext.DEFAULT;
+        server = HttpServer.create(requireNonNull(address), BACKLOG);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/runes", guard(this::runes));
+        server.createContext("/filters/", guard(this::filters));
+        server.createContext("/runewords", guard(this::runewords));
+        server.start();
+    }
+
+    /* Handles GET /runes, POST /runes/add, POST /runes/toss. */
+    private void runes(final HttpExchange exchange) throws IOException
+    {
+        final String path = exchange.getRequestURI().getPath();
+        if (path.equals("/runes"))
+        {
+            if (expect(exchange, "GET")) respond(exchange, OK, runesJSON(tracker.getRunes()));
+            return;
+        }
+        final boolean add = path.equals("/runes/add");
+        if (!add && !path.equals("/runes/toss"))
+        {
+            respond(exchange, NOT_FOUND, error(path));
+            return;
+        }
+        if (!expect(exchange, "POST")) return;
+
+        final int[] delta = new int[Rune.extension.size()];
+        final CommandTokenizer tokens = new CommandTokenizer().reset(readBody(exchange));
+        while (tokens.next())
+        {
+            final Rune rune = tokens.rune();
+            if (rune == null)
+                throw new IllegalArgumentException(context.template(add ? LocaleKey.COMMANDS_ADD_EX_DNE
+                        : LocaleKey.COMMANDS_TOSS_EX_DNE).format(tokens.token()));
+            delta[rune.ordinal()] = Math.addExact(delta[rune.ordinal()], add ? tokens.quantity() : -tokens.quantity());
+        }
+        tracker.moveRunes(delta);
+        respond(exchange, OK, runesJSON(tracker.getRunes()));
+    }
+
+    /* Handles POST /filters/{name}. */
+    @SuppressWarnings("unchecked")
+    private void filters(final HttpExchange exchange) throws IOException
+    {
+        if (!expect(exchange, "POST")) return;
+        final String name = lastSegment(exchange, "/filters/");
+        final JSONObject json = new JSONObject();
+        json.put("name", name);
+        json.put("filtered", tracker.toggleFilter(name));
+        respond(exchange, OK, json.toJSONString());
+    }
+
+    /* Handles GET /runewords, GET /runewords/{name}. */
+    @SuppressWarnings("unchecked")
+    private void runewords(final HttpExchange exchange) throws IOException
+    {
+        if (!expect(exchange, "GET")) return;
+        if (!exchange.getRequestURI().getPath().equals("/runewords"))
+        {
+            final String name = lastSegment(exchange, "/runewords/");
+            final SharedTracker.Row row = tracker.focus(name);
+            if (row == null) respond(exchange, NOT_FOUND,
+                    error(context.template(LocaleKey.COMMANDS_INFO_EX_DNE).format(name)));
+            else
+            {
+                final JSONObject json = rowJSON(row);
+                json.put("description", row.getRuneword().getDescription());
+                respond(exchange, OK, json.toJSONString());
+            }
+            return;
+        }
+
+        RunewordSorter.Sort sort = DEFAULT_SORT;
+        final String query = exchange.getRequestURI().getRawQuery();
+        if (query != null)
+            for (final String parameter : query.split("&"))
+                if (parameter.startsWith("sort="))
+                {
+                    final String value = decode(parameter.substring("sort=".length()));
+                    sort = RunewordSorter.Sort.extension.fromString(value);
+                    if (sort == null) throw new IllegalArgumentException(
+                            context.template(LocaleKey.COMMANDS_SORT_EX_DNE).format(value));
+                }
+
+        final JSONArray json = new JSONArray();
+        for (final SharedTracker.Row row : tracker.list(sort))
+            json.add(rowJSON(row));
+        respond(exchange, OK, json.toJSONString());
+    }
+
+    /* Answers malformed requests with status 400, and those whose body is too large with 413. */
+    private static HttpHandler guard(final HttpHandler handler)
+    {
+        return exchange ->
+        {
+            try
+            {
+                handler.handle(exchange);
+            }
+            catch (final BodyTooLargeException e)
+            {
+                respond(exchange, TOO_LARGE, error(e.getMessage()));
+            }
+            catch (final IllegalArgumentException | ArithmeticException e)
+            {
+                respond(exchange, BAD_REQUEST, error(e.getMessage()));
+            }
+            finally
+            {
+                exchange.close();
+            }
+        };
+    }
+
+    /* Answers with status 405 unless the request uses the method. */
+    private static boolean expect(final HttpExchange exchange, final String method) throws IOException
+    {
+        if (exchange.getRequestMethod().equalsIgnoreCase(method)) return true;
+        exchange.getResponseHeaders().set("Allow", method);
+        respond(exchange, BAD_METHOD, error(exchange.getRequestMethod()));
+        return false;
+    }
+
+    /* Decoded path segment following the prefix. */
+    private static String lastSegment(final HttpExchange exchange, final String prefix)
+    {
+        final String path = exchange.getRequestURI().getPath();
+        final String segment = path.substring(Math.min(prefix.length(), path.length()));
+        if (segment.isEmpty() || segment.indexOf('/') >= 0)
+            throw new IllegalArgumentException("Malformed path: " + path);
+        return segment.toLowerCase();
+    }
+
+    /* Body of the request, read no further than one byte beyond the maximum length. */
+    private static String readBody(final HttpExchange exchange) throws IOException
+    {
+        final String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length != null && length.length() > 0 && Long.parseLong(length.trim()) > MAX_BODY)
+            throw new BodyTooLargeException();
+        try (final InputStream in = exchange.getRequestBody())
+        {
+            final byte[] bytes = new byte[MAX_BODY + 1];
+            int size = 0;
+            for (int read; size < bytes.length && (read = in.read(bytes, size, bytes.length - size)) >= 0; )
+                size += read;
+            if (size > MAX_BODY) throw new BodyTooLargeException();
+            return new String(bytes, 0, size, StandardCharsets.UTF_8);
+        }
+    }
+
+    /* Thrown when a request body exceeds the maximum length. */
+    private static final class BodyTooLargeException extends IllegalArgumentException
+    {
+        private static final long serialVersionUID = 1L;
+
+        private BodyTooLargeException()
+        {
+            super("Request body exceeds " + MAX_BODY + " bytes.");
+        }
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String json)
+            throws IOException
+    {
+        final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (final OutputStream out = exchange.getResponseBody())
+        {
+            out.write(bytes);
+        }
+    }
+
+    private static String decode(final String value)
+    {
+        try
+        {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+        }
+        catch (final java.io.UnsupportedEncodingException e)
+        {
+            throw new AssertionError(e); // UTF-8 is always supported.
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String error(final String message)
+    {
+        final JSONObject json = new JSONObject();
+        json.put("error", message);
+        return json.toJSONString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String runesJSON(final Map<Rune, Integer> runes)
+    {
+        final JSONObject json = new JSONObject();
+        runes.forEach((rune, quantity) -> json.put(rune.getName(), quantity));
+        return json.toJSONString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject rowJSON(final SharedTracker.Row row)
+    {
+        final Runeword rw = row.getRuneword();
+        final JSONObject json = new JSONObject();
+        json.put("name", rw.getName());
+        json.put("word", rw.getWord());
+        json.put("level", rw.getLevel());
+        json.put("sockets", rw.getRequiredSockets());
+        json.put("progress", row.getProgress());
+        final JSONArray types = new JSONArray();
+        for (final ItemType type : rw.getTypes())
+            types.add(type.getName());
+        json.put("types", types);
+        return json;
+    }
+
+    /**
+     * @return Port on which the server listens.
+     */
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server, waiting at most one second for in-flight requests.
+     */
+    @Override public void close()
+    {
+        server.stop(1);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.api;
+
+import com.kevintyrrell.model.diablo.ItemType;
+import com.kevintyrrell.model.diablo.rune.Rune;
+import com.kevintyrrell.model.diablo.rune.RuneMap;
+import com.kevintyrrell.model.diablo.runeword.Runeword;
+import com.kevintyrrell.model.diablo.runeword.RunewordFilter;
+import com.kevintyrrell.model.diablo.runeword.RunewordSorter;
+import com.kevintyrrell.model.util.SaveScheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a thread-safe facade over a player's runes, filter, and sorters.
+ *
+ * Reads, such as listing runewords, share a read lock and proceed concurrently.
+ * Writes take the write lock, so every read observes a consistent state; a sort
+ * can therefore never observe progress changing mid-sort. Changes are handed to
+ * a write-behind SaveScheduler, so no request waits on the storage medium.
+ *
+ * @since 3.0
+ */
+public final class SharedTracker
+{
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final RuneMap runes;
+    private final RunewordFilter filter;
+    /* One sorter per sort, as a sorter's current sort is otherwise shared mutable state. */
+    private final Map<RunewordSorter.Sort, RunewordSorter> sorters = new EnumMap<>(RunewordSorter.Sort.class);
+    /* All runewords, keyed as by RunewordLoader. */
+    private final Map<String, Runeword> runewords;
+    private final SaveScheduler saver;
+    /* Directory, relative to the save directory, in which changes are saved. */
+    private final String directory;
+
+    /**
+     * @param runes Runes in which the player owns; must not be accessed other than through the tracker.
+     * @param filter Filter of the runes; must not be accessed other than through the tracker.
+     * @param runewords All runewords, keyed by their query strings.
+     * @param saver Scheduler which saves changes in the background.
+     */
+    public SharedTracker(final RuneMap runes, final RunewordFilter filter, final Map<String, Runeword> runewords,
+                         final SaveScheduler saver)
+    {
+        this(runes, filter, runewords, saver, "");
+    }
+
+    /**
+     * @param runes Runes in which the player owns; must not be accessed other than through the tracker.
+     * @param filter Filter of the runes; must not be accessed other than through the tracker.
+     * @param runewords All runewords, keyed by their query strings.
+     * @param saver Scheduler which saves changes in the background.
+     * @param directory Directory, relative to the save directory, in which changes are saved; empty or ending in '/'.
+     */
+    public SharedTracker(final RuneMap runes, final RunewordFilter filter, final Map<String, Runeword> runewords,
+                         final SaveScheduler saver, final String directory)
+    {
+        this.runes = requireNonNull(runes);
+        this.filter = requireNonNull(filter);
+        this.runewords = requireNonNull(runewords);
+        this.saver = requireNonNull(saver);
+        this.directory = requireNonNull(directory);
+        for (final RunewordSorter.Sort sort : RunewordSorter.Sort.extension.values())
+        {
+            final RunewordSorter sorter = new RunewordSorter(runes);
+            sorter.sortBy(sort);
+            sorters.put(sort, sorter);
+        }
+    }
+
+    /**
+     * Applies a change in quantity to every rune at once.
+     *
+     * @param delta Change in quantity of each rune, indexed by ordinal.
+     * @see RuneMap#applyDelta(int[])
+     */
+    public void moveRunes(final int[] delta)
+    {
+        final Lock w = lock.writeLock();
+        w.lock();
+        try
+        {
+            runes.applyDelta(delta);
+            saver.submit(directory + runes.getFileName(), runes);
+        }
+        finally { w.unlock(); }
+    }
+
+    /**
+     * @return Copy of the runes in which the player owns.
+     */
+    public Map<Rune, Integer> getRunes()
+    {
+        final Lock r = lock.readLock();
+        r.lock();
+        try
+        {
+            /* EnumMap's copy constructor rejects an empty map. */
+            final Map<Rune, Integer> copy = new EnumMap<>(Rune.class);
+            copy.putAll(runes.getRunes());
+            return copy;
+        }
+        finally { r.unlock(); }
+    }
+
+    /**
+     * Filters or restores a runeword or concrete item type.
+     *
+     * @param name Query string of the runeword or item type.
+     * @return true if filtered, false if restored.
+     * @throws IllegalArgumentException If no runeword or item type has the name.
+     */
+    public boolean toggleFilter(final String name)
+    {
+        final Runeword runeword = runewords.get(requireNonNull(name));
+        final ItemType type = runeword == null ? ItemType.extension.fromString(name) : null;
+        if (runeword == null && type == null)
+            throw new IllegalArgumentException("Unrecognized Runeword or Item Type: " + name);
+
+        final Lock w = lock.writeLock();
+        w.lock();
+        try
+        {
+            final boolean filtered = runeword != null ? filter.filter(runeword) : filter.filter(type);
+            saver.submit(directory + filter.getFileName(), filter);
+            return filtered;
+        }
+        finally { w.unlock(); }
+    }
+
+    /**
+     * Lists the runewords which pass the filter, sorted.
+     *
+     * @param sort Sort of the runewords.
+     * @return Immutable list of the runewords and the progress towards each.
+     */
+    public List<Row> list(final RunewordSorter.Sort sort)
+    {
+        final RunewordSorter sorter = sorters.get(requireNonNull(sort));
+        final Lock r = lock.readLock();
+        r.lock();
+        try
+        {
+            final List<Row> rows = new ArrayList<>();
+            sorter.flatMap(filter.stream()).forEach(rw -> rows.add(new Row(rw, runes.progressTowards(rw))));
+            return Collections.unmodifiableList(rows);
+        }
+        finally { r.unlock(); }
+    }
+
+    /**
+     * Focuses a single runeword.
+     *
+     * @param name Query string of the runeword.
+     * @return Runeword and the progress towards it, or null if no runeword has the name.
+     */
+    public Row focus(final String name)
+    {
+        final Runeword runeword = runewords.get(requireNonNull(name));
+        if (runeword == null) return null;
+        final Lock r = lock.readLock();
+        r.lock();
+        try
+        {
+            return new Row(runeword, runes.progressTowards(runeword));
+        }
+        finally { r.unlock(); }
+    }
+
+    /**
+     * Defines a runeword paired with the progress towards it, as of when it was read.
+     *
+     * @since 3.0
+     */
+    public static final class Row
+    {
+        private final Runeword runeword;
+        private final double progress;
+
+        private Row(final Runeword runeword, final double progress)
+        {
+            this.runeword = runeword;
+            this.progress = progress;
+        }
+
+        /**
+         * @return Runeword of the row.
+         */
+        public Runeword getRuneword()
+        {
+            return runeword;
+        }
+
+        /**
+         * @return Progress towards the runeword, from [0, 1].
+         */
+        public double getProgress()
+        {
+            return progress;
+        }
+    }
+}
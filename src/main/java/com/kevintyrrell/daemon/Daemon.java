@@ -0,0 +1,318 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.daemon;
+
+import com.kevintyrrell.model.diablo.runeword.RunewordSorter;
+import com.kevintyrrell.model.profile.Profile;
+import com.kevintyrrell.model.profile.ProfileRepository;
+import com.kevintyrrell.model.util.Saveable;
+import com.kevintyrrell.view.BatchMode;
+import com.kevintyrrell.view.RunewordTable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.AclEntry;
+import java.nio.file.attribute.AclEntryPermission;
+import java.nio.file.attribute.AclEntryType;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a long-lived server which keeps the runeword catalog and player profiles warm.
+ *
+ * The daemon listens on the loopback interface only, on an ephemeral port which is
+ * published to a port file within the save directory. Clients then pay neither JVM
+ * startup nor catalog loading; a request costs only its own commands.
+ *
+ * The loopback interface is shared by every user of the machine, so the port file
+ * also holds a random token, and only its owner may read it. Connections which do
+ * not present the token are closed without a reply.
+ *
+ * Port file, in ASCII: [line] port, [line] token.
+ *
+ * Protocol, one request per connection, in UTF-8:
+ *  Request: [line] token, [line] player id, followed by batch commands, one per line, until end of stream.
+ *  Reply: rejected commands, the player's runeword table, and a summary line.
+ *
+ * Requests are handled one at a time on a single worker thread, so profiles are
+ * never accessed concurrently. Each request saves the profile it changed, and is
+ * disconnected once it has taken longer than a fixed deadline in total, so no
+ * client may hold the worker thread for long.
+ *
+ * @see BatchMode
+ * @since 3.0
+ */
+public final class Daemon implements Closeable
+{
+    /**
+     * Default filename of the port file, within the save directory.
+     */
+    public static final String DEFAULT_PORT_FILE = "daemon";
+
+    /**
+     * Extension of the port file.
+     */
+    public static final String PORT_EXTENSION = ".port";
+
+    /* Milliseconds after which a request is disconnected, however much it has sent. */
+    private static final int REQUEST_TIMEOUT = 10000;
+    /* Number of random bytes of the token. */
+    private static final int TOKEN_BYTES = 32;
+
+    private final ProfileRepository profiles;
+    private final Path portFile;
+    /* Token which clients must present, as ASCII hex digits. */
+    private final byte[] token;
+    private final ServerSocket server;
+    /* Single worker thread, which serializes access to the profiles. */
+    private final ExecutorService worker;
+    /* Thread which disconnects requests which exceed their deadline. */
+    private final ScheduledExecutorService watchdog;
+    private final Thread acceptor;
+
+    /**
+     * Starts a daemon which publishes its port and token to the default port file.
+     *
+     * @param profiles Repository of player profiles, which the daemon closes upon closing.
+     * @throws IOException If the daemon could not listen or publish its port.
+     */
+    public Daemon(final ProfileRepository profiles) throws IOException
+    {
+        this(profiles, DEFAULT_PORT_FILE);
+    }
+
+    /**
+     * Starts a daemon.
+     *
+     * @param profiles Repository of player profiles, which the daemon closes upon closing.
+     * @param portFile Filename of the port file, excluding extension.
+     * @throws IOException If the daemon could not listen or publish its port.
+     */
+    public Daemon(final ProfileRepository profiles, final String portFile) throws IOException
+    {
+        this.profiles = requireNonNull(profiles);
+        this.portFile = Saveable.pathOf(requireNonNull(portFile), PORT_EXTENSION);
+        final byte[] random = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(random);
+        final StringBuilder hex = new StringBuilder(TOKEN_BYTES * 2);
+        for (final byte b : random)
+            hex.append(String.format("%02x", b));
+        token = hex.toString().getBytes(StandardCharsets.US_ASCII);
+
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        try
+        {
+            Files.createDirectories(this.portFile.toAbsolutePath().getParent());
+            writePrivately(this.portFile,
+                    (server.getLocalPort() + "\n" + hex + "\n").getBytes(StandardCharsets.US_ASCII));
+        }
+        catch (final IOException e)
+        {
+            server.close();
+            throw e;
+        }
+
+        worker = Executors.newSingleThreadExecutor(r -> new Thread(r, Daemon.class.getSimpleName()));
+        watchdog = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            final Thread t = new Thread(r, Daemon.class.getSimpleName() + "-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        acceptor = new Thread(this::accept, Daemon.class.getSimpleName() + "-acceptor");
+        acceptor.start();
+    }
+
+    /* Atomically writes a file which only its owner may access, restricting it before it holds any bytes. */
+    private static void writePrivately(final Path path, final byte[] bytes) throws IOException
+    {
+        final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(temp);
+        final Set<String> views = temp.getFileSystem().supportedFileAttributeViews();
+        if (views.contains("posix"))
+            Files.createFile(temp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        else if (views.contains("acl"))
+        {
+            final AclFileAttributeView acl = Files.getFileAttributeView(Files.createFile(temp), AclFileAttributeView.class);
+            acl.setAcl(Collections.singletonList(AclEntry.newBuilder()
+                    .setType(AclEntryType.ALLOW)
+                    .setPrincipal(acl.getOwner())
+                    .setPermissions(EnumSet.allOf(AclEntryPermission.class))
+                    .build()));
+        }
+        else throw new IOException("File permissions cannot be restricted: " + path);
+        Files.write(temp, bytes);
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /* Accepts connections until the server socket is closed. */
+    private void accept()
+    {
+        while (!server.isClosed())
+        {
+            try
+            {
+                final Socket socket = server.accept();
+                worker.execute(() -> handle(socket));
+            }
+            catch (final SocketException ignored) { } // Server socket was closed.
+            catch (final IOException e) { e.printStackTrace(); }
+        }
+    }
+
+    /* Handles a single request, disconnecting it once its deadline passes. */
+    private void handle(final Socket socket)
+    {
+        final ScheduledFuture<?> deadline = watchdog.schedule(() ->
+        {
+            try
+            {
+                socket.close(); // Fails any blocked read or write of the request.
+            }
+            catch (final IOException ignored) { }
+        }, REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+
+        try (socket)
+        {
+            final BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            final Writer out = new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            if (!authenticate(in)) return;
+            final String id = in.readLine();
+            if (id == null) return;
+
+            final Profile profile;
+            try
+            {
+                profile = profiles.get(id.trim());
+            }
+            catch (final IllegalArgumentException e)
+            {
+                out.write(e.getMessage());
+                out.write(System.lineSeparator());
+                out.flush();
+                return;
+            }
+
+            final BatchMode batch = new BatchMode(profile.getRunes());
+            batch.run(in);
+            for (final String error : batch.getErrors())
+            {
+                out.write(error);
+                out.write(System.lineSeparator());
+            }
+            if (profile.hasUnsavedChanges()) profile.save();
+            new RunewordTable(profile.getRunes())
+                    .render(out, profile.getFilter(), new RunewordSorter(profile.getRunes()));
+            out.write(batch.summary());
+            out.write(System.lineSeparator());
+            out.flush();
+        }
+        catch (final SocketException ignored) { } // Disconnected by the client or the deadline.
+        catch (final IOException e) { e.printStackTrace(); }
+        finally
+        {
+            deadline.cancel(false);
+        }
+    }
+
+    /* Reads the first line and compares it to the token, reading no further than a line of its length. */
+    private boolean authenticate(final Reader in) throws IOException
+    {
+        final byte[] line = new byte[token.length];
+        for (int i = 0; i <= line.length; i++)
+        {
+            final int c = in.read();
+            if (c == '\n') return i == line.length && MessageDigest.isEqual(token, line);
+            if (c < 0 || c > 0x7F || i == line.length) return false;
+            line[i] = (byte)c;
+        }
+        return false;
+    }
+
+    /**
+     * @return Port on which the daemon listens.
+     */
+    public int getPort()
+    {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Blocks until the daemon is closed.
+     *
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public void join() throws InterruptedException
+    {
+        acceptor.join();
+    }
+
+    /**
+     * Stops accepting requests, completes pending requests, saves all profiles, and removes the port file.
+     */
+    @Override public void close()
+    {
+        try
+        {
+            server.close();
+            worker.shutdown();
+            worker.awaitTermination(REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+            watchdog.shutdownNow();
+            Files.deleteIfExists(portFile);
+        }
+        catch (final IOException e) { e.printStackTrace(); }
+        catch (final InterruptedException e) { Thread.currentThread().interrupt(); }
+        finally
+        {
+            try
+            {
+                profiles.close();
+            }
+            catch (final IOException e) { e.printStackTrace(); }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.daemon;
+
+import com.kevintyrrell.model.util.Saveable;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a thin client which forwards commands to a running daemon and relays its reply.
+ *
+ * @see Daemon
+ * @since 3.0
+ */
+public final class DaemonClient
+{
+    /* Size of the buffer through which commands and replies are copied. */
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int port;
+    /* Token which the daemon requires of every request. */
+    private final String token;
+
+    /**
+     * Connects to the daemon which published the default port file.
+     *
+     * @throws IOException If no daemon is running, or the port file is malformed or unreadable.
+     */
+    public DaemonClient() throws IOException
+    {
+        this(Daemon.DEFAULT_PORT_FILE);
+    }
+
+    /**
+     * @param portFile Filename of the daemon's port file, excluding extension.
+     * @throws IOException If no daemon is running, or the port file is malformed or unreadable.
+     */
+    public DaemonClient(final String portFile) throws IOException
+    {
+        final Path path = Saveable.pathOf(requireNonNull(portFile), Daemon.PORT_EXTENSION);
+        try
+        {
+            final List<String> lines = Files.readAllLines(path, StandardCharsets.US_ASCII);
+            if (lines.size() != 2) throw new IOException("Port file is malformed: " + path);
+            port = Integer.parseInt(lines.get(0).trim());
+            token = lines.get(1).trim();
+        }
+        catch (final NoSuchFileException e)
+        {
+            throw new IOException("Daemon is not running: " + path, e);
+        }
+        catch (final NumberFormatException e)
+        {
+            throw new IOException("Port file is malformed: " + path, e);
+        }
+    }
+
+    /**
+     * Sends commands to the daemon on behalf of a player, relaying the reply.
+     *
+     * @param id Identifier of the player.
+     * @param commands Commands to send, one per line.
+     * @param reply Appendable to which the reply is relayed.
+     * @throws IOException If the daemon could not be reached.
+     */
+    public void send(final String id, final Reader commands, final Appendable reply) throws IOException
+    {
+        requireNonNull(id);
+        requireNonNull(commands);
+        requireNonNull(reply);
+        try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port))
+        {
+            final Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            out.write(token);
+            out.write('\n');
+            out.write(id);
+            out.write('\n');
+            final char[] buffer = new char[BUFFER_SIZE];
+            for (int n; (n = commands.read(buffer)) >= 0; )
+                out.write(buffer, 0, n);
+            out.flush();
+            socket.shutdownOutput(); // Signals the end of the commands.
+
+            final Reader in = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
+            for (int n; (n = in.read(buffer)) >= 0; )
+                reply.append(CharBuffer.wrap(buffer, 0, n));
+        }
+    }
+}
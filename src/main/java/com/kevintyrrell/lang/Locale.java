@@ -19,11 +19,8 @@
 package com.kevintyrrell.lang;
 
 import com.kevintyrrell.model.util.CachedValue;
-import com.kevintyrrell.model.util.JSONLoader;
-import org.json.simple.JSONObject;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.MissingResourceException;
 import java.util.WeakHashMap;
 
 import static java.util.Objects.requireNonNull;
@@ -31,6 +28,11 @@ import static java.util.Objects.requireNonNull;
 /**
  * Defines a layout of all strings used in the program.
  *
+ * Each locale owns an immutable table of its strings, compiled from
+ * Localization.json at build time and indexed by LocaleKey#ordinal().
+ * The active locale only governs Locale#get(); sessions which require
+ * their own language should resolve strings through a LocaleContext.
+ *
  * @since 3.0
  */
 public enum Locale
@@ -39,16 +41,24 @@ public enum Locale
 
     /* Default to English. */
     private static final Locale DEFAULT_LOCALE = EN;
-    /* JSON object for all of the locale data. */
-    private static final JSONObject jo = (JSONObject)JSONLoader.parseJSON("Localization");
     /* Set to trigger invalidation(s) when the locale is changed. */
     private static final WeakHashMap<CachedValue<String>, Object> invalidators = new WeakHashMap<>();
 
     /* The currently selected locale. */
-    private static Locale active = DEFAULT_LOCALE;
+    private static volatile Locale active = DEFAULT_LOCALE;
 
-    /* Cached strings for the locale. */
-    private final Map<String, String> cachedPaths = new HashMap<>();
+    /* Immutable table of all strings for the locale, indexed by key ordinal. */
+    private final String[] strings;
+    /* Templates parsed on demand from the strings, indexed by key ordinal. */
+    private final Template[] templates;
+
+    Locale()
+    {
+        strings = LocaleTables.forLocale(toString());
+        if (strings == null)
+            throw new MissingResourceException("Locale has no localization data", Locale.class.getSimpleName(), name());
+        templates = new Template[strings.length];
+    }
 
     /**
      * Retrieves a JSON String value which is notified of locale changes.
@@ -58,31 +68,102 @@ public enum Locale
      * The cached value instance will be notified of changes to the locale.
      * Any change in the locale will trigger a re-lookup on the next CachedValue#get() call.
      *
+     * Prefer Locale#get(LocaleKey), whose keys are verified at compile-time.
+     *
      * @param path Path through the fields of the JSON file.
      * @return Cached value of the String value at the path.
      */
     public static CachedValue<String> get(final String path)
     {
+        return get(toKey(path));
+    }
+
+    /**
+     * Retrieves a localized String value which is notified of locale changes.
+     *
+     * @param key Key of the localized String.
+     * @return Cached value of the String value of the key.
+     * @see Locale#get(String)
+     */
+    public static CachedValue<String> get(final LocaleKey key)
+    {
+        requireNonNull(key);
         final CachedValue<String> cv = new CachedValue<>()
         {
             @Override protected String recalculate()
             {
-                String value = active.cachedPaths.get(requireNonNull(path));
-                if (value == null)
-                {
-                    value = JSONLoader.find(jo, active.toString() + '/' + path);
-                    active.cachedPaths.put(path, value);
-                }
-
-                return value;
+                return active.lookup(key);
             }
         };
 
         /* Value is a dummy object in this case, using map as a set. */
-        invalidators.put(cv, jo);
+        synchronized (invalidators)
+        {
+            invalidators.put(cv, DEFAULT_LOCALE);
+        }
         return cv;
     }
 
+    /**
+     * Retrieves a JSON String value of this locale.
+     *
+     * Unlike Locale#get(), the lookup is independent of the active locale
+     * and reads only from the immutable string table of this locale.
+     * It is therefore safe to call from any thread.
+     *
+     * @param path Path through the fields of the JSON file.
+     * @return String value at the path.
+     * @see LocaleContext
+     */
+    public String lookup(final String path)
+    {
+        return lookup(toKey(path));
+    }
+
+    /**
+     * Retrieves a localized String value of this locale.
+     *
+     * @param key Key of the localized String.
+     * @return String value of the key.
+     * @see Locale#lookup(String)
+     */
+    public String lookup(final LocaleKey key)
+    {
+        return strings[key.ordinal()];
+    }
+
+    /**
+     * Retrieves a localized String of this locale, parsed as a template.
+     *
+     * Each template is parsed once and then cached for the life of the locale.
+     * Templates are immutable, so concurrent callers racing to parse
+     * the same template harmlessly produce equivalent instances.
+     *
+     * @param key Key of the localized format String.
+     * @return Template of the key.
+     * @see Template
+     */
+    public Template template(final LocaleKey key)
+    {
+        final int i = key.ordinal();
+        Template template = templates[i];
+        if (template == null)
+        {
+            template = new Template(strings[i]);
+            templates[i] = template;
+        }
+        return template;
+    }
+
+    /* Resolves a path into its key, failing if the path does not exist. */
+    private static LocaleKey toKey(final String path)
+    {
+        final LocaleKey key = LocaleKey.extension.fromString(requireNonNull(path));
+        if (key == null)
+            throw new IllegalArgumentException("Localized path was invalid: ".concat(path));
+        return key;
+    }
+
     /**
      * @return Get the current locale.
      */
@@ -103,7 +184,10 @@ public enum Locale
     {
         if (requireNonNull(locale) == active) return;
         active = locale;
-        invalidators.keySet().forEach(CachedValue::invalidate);
+        synchronized (invalidators)
+        {
+            invalidators.keySet().forEach(CachedValue::invalidate);
+        }
     }
 
     /**
@@ -0,0 +1,99 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.lang;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines the locale of a single session.
+ *
+ * Contexts are immutable and do not interact with the active locale.
+ * Multiple sessions may therefore resolve strings in different languages
+ * concurrently, without invalidating any of the cached values of Locale#get().
+ *
+ * @see Locale#lookup(String)
+ * @since 3.0
+ */
+public final class LocaleContext
+{
+    /**
+     * Context of the default locale.
+     */
+    public static final LocaleContext DEFAULT = new LocaleContext(Locale.EN);
+
+    private final Locale locale;
+
+    /**
+     * @param locale Locale of the session.
+     */
+    public LocaleContext(final Locale locale)
+    {
+        this.locale = requireNonNull(locale);
+    }
+
+    /**
+     * Retrieves a JSON String value of the session's locale.
+     *
+     * @param path Path through the fields of the JSON file.
+     * @return String value at the path.
+     */
+    public String get(final String path)
+    {
+        return locale.lookup(path);
+    }
+
+    /**
+     * Retrieves a localized String value of the session's locale.
+     *
+     * @param key Key of the localized String.
+     * @return String value of the key.
+     */
+    public String get(final LocaleKey key)
+    {
+        return locale.lookup(key);
+    }
+
+    /**
+     * Retrieves a localized String of the session's locale, parsed as a template.
+     *
+     * @param key Key of the localized format String.
+     * @return Template of the key.
+     */
+    public Template template(final LocaleKey key)
+    {
+        return locale.template(key);
+    }
+
+    /**
+     * @param locale Locale of the new session context.
+     * @return Context of the specified locale.
+     */
+    public LocaleContext withLocale(final Locale locale)
+    {
+        return requireNonNull(locale) == this.locale ? this : new LocaleContext(locale);
+    }
+
+    /**
+     * @return Locale of the session.
+     */
+    public Locale getLocale()
+    {
+        return locale;
+    }
+}
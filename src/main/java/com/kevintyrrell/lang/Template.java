@@ -0,0 +1,154 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.lang;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a pre-parsed format String, split into literal and argument segments.
+ *
+ * Templates support the subset of String#format used by the localization file:
+ *  * `%s`: argument, rendered via String#valueOf.
+ *  * `%%`: literal percent sign.
+ *  * `%n`: line separator.
+ *
+ * Parsing occurs once, after which rendering only appends segments.
+ * Templates are immutable and may be shared between threads.
+ *
+ * @see Locale#template(LocaleKey)
+ * @since 3.0
+ */
+public final class Template
+{
+    /* Literal segments, where literal[i] precedes argument i. */
+    private final String[] literals;
+
+    /**
+     * @param format Format String to parse.
+     */
+    public Template(final String format)
+    {
+        literals = parse(requireNonNull(format));
+    }
+
+    /* Splits the format into the literals surrounding each argument. */
+    private static String[] parse(final String format)
+    {
+        final List<String> literals = new ArrayList<>();
+        final StringBuilder sb = new StringBuilder(format.length());
+        final int len = format.length();
+        for (int i = 0; i < len; i++)
+        {
+            final char c = format.charAt(i);
+            if (c != '%')
+            {
+                sb.append(c);
+                continue;
+            }
+            if (++i >= len)
+                throw new IllegalArgumentException("Format ends with an incomplete specifier: ".concat(format));
+            switch (format.charAt(i))
+            {
+                case 's':
+                    literals.add(sb.toString());
+                    sb.setLength(0);
+                    break;
+                case '%': sb.append('%'); break;
+                case 'n': sb.append(System.lineSeparator()); break;
+                default: throw new IllegalArgumentException("Unsupported format specifier: %" + format.charAt(i));
+            }
+        }
+        literals.add(sb.toString());
+        return literals.toArray(new String[0]);
+    }
+
+    /**
+     * @return Number of arguments the template requires.
+     */
+    public int getArgumentCount()
+    {
+        return literals.length - 1;
+    }
+
+    /**
+     * Renders the template into a String builder.
+     *
+     * @param sb Builder to append to.
+     * @param args Arguments of the template; extra arguments are ignored.
+     * @return The specified builder.
+     */
+    public StringBuilder render(final StringBuilder sb, final Object... args)
+    {
+        try
+        {
+            renderTo(sb, args);
+        }
+        catch (final IOException e)
+        {
+            throw new UncheckedIOException(e); // StringBuilder does not throw.
+        }
+        return sb;
+    }
+
+    /**
+     * Renders the template into an appendable.
+     *
+     * @param out Appendable to append to.
+     * @param args Arguments of the template; extra arguments are ignored.
+     * @param <A> Type of the appendable.
+     * @return The specified appendable.
+     * @throws IOException If the appendable fails to append.
+     */
+    public <A extends Appendable> A renderTo(final A out, final Object... args) throws IOException
+    {
+        requireNonNull(out);
+        if (requireNonNull(args).length < getArgumentCount())
+            throw new IllegalArgumentException("Template requires " + getArgumentCount() + " argument(s).");
+        out.append(literals[0]);
+        for (int i = 1; i < literals.length; i++)
+        {
+            final Object arg = args[i - 1];
+            out.append(arg instanceof CharSequence ? (CharSequence)arg : String.valueOf(arg));
+            out.append(literals[i]);
+        }
+        return out;
+    }
+
+    /**
+     * @param args Arguments of the template; extra arguments are ignored.
+     * @return Rendered String.
+     */
+    public String format(final Object... args)
+    {
+        return render(new StringBuilder(), args).toString();
+    }
+
+    /**
+     * @return String representation of the template.
+     */
+    @Override public String toString()
+    {
+        return String.join("%s", literals);
+    }
+}
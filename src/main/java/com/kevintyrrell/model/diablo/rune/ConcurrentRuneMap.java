@@ -0,0 +1,248 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.model.diablo.rune;
+
+import com.kevintyrrell.model.util.Saveable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines an assortment of Runes which many threads may modify at once.
+ *
+ * Each rune is an atomic counter indexed by ordinal, so writers to the same rune retry a
+ * compare-and-set rather than lose an update. Tosses never drive a quantity negative:
+ * the compare-and-set only succeeds while enough remain.
+ *
+ * Reads of a single rune are always current. Reads spanning runes, such as progress and
+ * appraisal, go through `snapshot()`, which briefly quiesces writers so that every rune is
+ * read as of the same instant. Writers hold the gate in shared mode, so they never wait on
+ * one another; only snapshots hold it exclusively. Every writer still updates the gate's
+ * state, as well as the unsaved changes flag, so writers to different runes do contend on
+ * those, retrying a compare-and-set rather than blocking.
+ *
+ * Saves in the binary format and under the filename of a RuneMap, so either may restore the other.
+ *
+ * @since 3.0
+ */
+public final class ConcurrentRuneMap implements ReadOnlyRuneMap, Saveable
+{
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(Rune.extension.size());
+    /* Shared by writers, exclusive to snapshots. */
+    private final StampedLock gate = new StampedLock();
+    /* Number of changes; exact whenever the gate is held exclusively. */
+    private final LongAdder changes = new LongAdder();
+    private final AtomicBoolean unsavedChanges = new AtomicBoolean();
+
+    /**
+     * Constructs an empty rune map.
+     */
+    public ConcurrentRuneMap() {}
+
+    /**
+     * @param runes Rune map whose quantities to copy.
+     */
+    public ConcurrentRuneMap(final ReadOnlyRuneMap runes)
+    {
+        requireNonNull(runes).getRunes().forEach((rune, quantity) -> counts.set(rune.ordinal(), quantity));
+    }
+
+    /**
+     * Moves a number of a specified rune into or out of the rune map.
+     *
+     * @param key Rune to move.
+     * @param diff Number of runes to add or remove.
+     * @return Quantity of the rune after the move.
+     * @throws IllegalArgumentException If the quantity would become negative or too large.
+     */
+    public int moveRunes(final Rune key, final int diff)
+    {
+        final int i = requireNonNull(key).ordinal();
+        if (diff == 0) return counts.get(i);
+
+        final long stamp = gate.readLock();
+        try
+        {
+            int quantity, next;
+            do
+            {
+                quantity = counts.get(i);
+                final long sum = (long)quantity + diff;
+                if (sum < 0) throw new IllegalArgumentException("Total rune quantity cannot be negative.");
+                if (sum > Integer.MAX_VALUE) throw new IllegalArgumentException("Total rune quantity is too large.");
+                next = (int)sum;
+            }
+            while (!counts.compareAndSet(i, quantity, next));
+            changes.increment();
+            flagUnsavedChanges();
+            return next;
+        }
+        finally { gate.unlockRead(stamp); }
+    }
+
+    /**
+     * Adds a specified number of a rune to the rune map.
+     *
+     * @param key Rune to add.
+     * @param num Number of the specified rune to add.
+     * @return Quantity of the rune after the addition.
+     */
+    public int addRunes(final Rune key, final int num)
+    {
+        if (num <= 0) throw new IllegalArgumentException("Number of runes must be positive.");
+        return moveRunes(key, num);
+    }
+
+    /**
+     * Tosses out a specified number of a rune from the rune map.
+     *
+     * Either every rune is tossed or, if too few remain, none are.
+     *
+     * @param key Rune to toss.
+     * @param num Number of the specified rune to toss.
+     * @return Quantity of the rune after the toss.
+     * @throws IllegalArgumentException If fewer than the number of runes remain.
+     */
+    public int tossRunes(final Rune key, final int num)
+    {
+        if (num <= 0) throw new IllegalArgumentException("Number of runes must be positive.");
+        return moveRunes(key, -num);
+    }
+
+    /**
+     * Copies the quantity of every rune as of a single instant.
+     *
+     * @return Snapshot stamped with the number of changes made before it was taken.
+     */
+    @Override public RuneSnapshot snapshot()
+    {
+        final EnumMap<Rune, Integer> runes = new EnumMap<>(Rune.class);
+        final long version;
+        final long stamp = gate.writeLock();
+        try
+        {
+            for (int i = 0; i < counts.length(); i++)
+            {
+                final int quantity = counts.get(i);
+                if (quantity > 0) runes.put(Rune.extension.fromOrdinal(i), quantity);
+            }
+            version = changes.sum();
+        }
+        finally { gate.unlockWrite(stamp); }
+        return new RuneSnapshot(runes, version);
+    }
+
+    /**
+     * @return Read-only map of a snapshot of the rune map.
+     * @see ConcurrentRuneMap#snapshot()
+     */
+    @Override public Map<Rune, Integer> getRunes()
+    {
+        return snapshot().getRunes();
+    }
+
+    /**
+     * @param rune Rune to count.
+     * @return Current quantity of the rune in the rune map, or 0 if absent.
+     */
+    @Override public int count(final Rune rune)
+    {
+        return counts.get(requireNonNull(rune).ordinal());
+    }
+
+    /**
+     * @return Appraisal of a snapshot of the rune map.
+     * @see ConcurrentRuneMap#snapshot()
+     */
+    @Override public double appraise()
+    {
+        return snapshot().appraise();
+    }
+
+    /**
+     * @param other Other rune map to compare to.
+     * @return Progress of a snapshot of the rune map towards the other, from [0, 1].
+     * @see ConcurrentRuneMap#snapshot()
+     */
+    @Override public double progressTowards(final ReadOnlyRuneMap other)
+    {
+        return snapshot().progressTowards(other);
+    }
+
+    /**
+     * @return Filename of a RuneMap.
+     */
+    @Override public String getFileName()
+    {
+        return RuneMap.class.getName();
+    }
+
+    /**
+     * Writes a snapshot of the rune map in the binary format of a RuneMap.
+     *
+     * @param out Output to write to.
+     * @throws IOException If the output could not be written to.
+     * @see RuneMap#writeState(DataOutput)
+     */
+    @Override public void writeState(final DataOutput out) throws IOException
+    {
+        RuneSnapshot.writeRunes(getRunes(), out);
+    }
+
+    /**
+     * Replaces the contents of the rune map with those of a RuneMap's binary format.
+     *
+     * @param in Input to read from.
+     * @param version Version of the binary format which was written.
+     * @throws IOException If the input could not be read or is malformed.
+     * @see RuneMap#readState(DataInput, int)
+     */
+    @Override public void readState(final DataInput in, final int version) throws IOException
+    {
+        final Map<Rune, Integer> runes = RuneSnapshot.readRunes(in);
+        final long stamp = gate.writeLock();
+        try
+        {
+            for (int i = 0; i < counts.length(); i++)
+                counts.set(i, runes.getOrDefault(Rune.extension.fromOrdinal(i), 0));
+            changes.increment();
+        }
+        finally { gate.unlockWrite(stamp); }
+    }
+
+    /**
+     * Flag provided by the inheriting class which controls
+     * whether or not the object has unsaved changes present.
+     *
+     * @return AtomicBoolean instance variable of the inheriting class.
+     */
+    @Override public AtomicBoolean getUnsavedChanges()
+    {
+        return unsavedChanges;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.model.diablo.rune;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a planner of Horadric Cube rune upgrades, bound to a snapshot of an inventory.
+ *
+ * Each upgrade transmutes runes of one ordinal into a single rune of the next ordinal:
+ * three runes up to and including Lem, two runes from Pul onwards, plus a gem from Ort onwards.
+ *
+ * Two questions are answered by dynamic programming over the 33-rune ladder:
+ *  * Plan: the fewest upgrades which complete a target, found by propagating each
+ *    shortfall down the ladder, as a shortfall can only be made from the rune below.
+ *  * Effective progress: the greatest progress towards a target when upgrades are allowed.
+ *    Whether to keep a rune or upgrade it is decided per rung, memoized on the rung and
+ *    the number of runes carried up from below, as rarer runes may be worth more than
+ *    the runes consumed to make them.
+ *
+ * Effective progress is memoized per target, so a planner may be shared by every
+ * comparison of a sort and every runeword of a filter during one render.
+ *
+ * @since 3.0
+ */
+public final class CubePlanner
+{
+    /* Number of rungs in the ladder. */
+    private static final int LADDER = Rune.extension.size();
+
+    /* Quantity of each rune, by ordinal, as of construction. */
+    private final int[] counts = new int[LADDER];
+    private final ReadOnlyRuneMap runes;
+    /* Effective progress towards each target evaluated so far. */
+    private final Map<ReadOnlyRuneMap, Double> effective = new ConcurrentHashMap<>();
+
+    /**
+     * @param runes Inventory to plan from; only its snapshot as of this call is used.
+     */
+    public CubePlanner(final ReadOnlyRuneMap runes)
+    {
+        this.runes = requireNonNull(runes).snapshot();
+        for (final Rune rune : Rune.extension.values())
+            counts[rune.ordinal()] = this.runes.count(rune);
+    }
+
+    /**
+     * @param input Rune to upgrade.
+     * @return Number of the rune which one upgrade consumes.
+     * @throws IllegalArgumentException If the rune is Zod, which cannot be upgraded.
+     */
+    public static int inputsPerUpgrade(final Rune input)
+    {
+        if (requireNonNull(input) == Rune.ZOD) throw new IllegalArgumentException("Zod Rune cannot be upgraded.");
+        return input.ordinal() < Rune.PUL.ordinal() ? 3 : 2;
+    }
+
+    /**
+     * @param input Rune to upgrade.
+     * @return true if upgrading the rune also consumes a gem.
+     */
+    public static boolean requiresGem(final Rune input)
+    {
+        return requireNonNull(input).ordinal() >= Rune.ORT.ordinal();
+    }
+
+    /**
+     * Plans the fewest upgrades which, together with the inventory, collect all of a target's runes.
+     *
+     * @param target Runes to collect, such as a runeword.
+     * @return Plan of upgrades, which is empty if none are needed, or null if the target cannot be reached.
+     */
+    public Plan plan(final ReadOnlyRuneMap target)
+    {
+        final long[] made = shortfalls(requirements(target));
+        if (made[0] > 0) return null; // El cannot be made.
+        final List<Upgrade> upgrades = new ArrayList<>();
+        for (int k = 1; k < LADDER; k++)
+            if (made[k] > 0) upgrades.add(new Upgrade(Rune.extension.fromOrdinal(k - 1), made[k]));
+        return new Plan(upgrades);
+    }
+
+    /**
+     * Evaluates progress towards a target, counting runes which upgrades could make.
+     *
+     * @param target Runes to collect, such as a runeword.
+     * @return Greatest progress achievable through upgrades, from [0, 1]; never less than `progressTowards`.
+     * @see ReadOnlyRuneMap#progressTowards(ReadOnlyRuneMap)
+     */
+    public double effectiveProgress(final ReadOnlyRuneMap target)
+    {
+        requireNonNull(target);
+        final Double cached = effective.get(target);
+        if (cached != null) return cached;
+        final double progress = evaluate(target);
+        effective.put(target, progress);
+        return progress;
+    }
+
+    /* Evaluates effective progress without memoization of the result. */
+    private double evaluate(final ReadOnlyRuneMap target)
+    {
+        final double base = runes.progressTowards(target);
+        if (base >= 1) return base;
+        final int[] needs = requirements(target);
+        final long[] made = shortfalls(needs);
+        if (made[0] == 0) return 1; // Every shortfall can be made.
+
+        int top = LADDER - 1;
+        while (top > 0 && needs[top] == 0) top--;
+        final double best = new Ladder(needs, made, top).best(0, 0);
+        return Math.min(1, Math.max(base, best / target.appraise()));
+    }
+
+    /* Quantity of each rune which the target requires, by ordinal. */
+    private static int[] requirements(final ReadOnlyRuneMap target)
+    {
+        final int[] needs = new int[LADDER];
+        requireNonNull(target).getRunes().forEach((rune, quantity) -> needs[rune.ordinal()] = quantity);
+        return needs;
+    }
+
+    /*
+     * Number of each rune, by ordinal, which must be made from the rune below to complete the target.
+     * Works down from Zod: a rung must supply its own need plus the inputs of the runes made above it.
+     * A positive entry for El means the target cannot be completed.
+     */
+    private long[] shortfalls(final int[] needs)
+    {
+        final long[] made = new long[LADDER];
+        for (int k = LADDER - 1; k >= 0; k--)
+        {
+            long demand = needs[k];
+            if (k + 1 < LADDER && made[k + 1] > 0)
+                demand = saturatedAdd(demand, saturatedMultiply(made[k + 1],
+                        inputsPerUpgrade(Rune.extension.fromOrdinal(k))));
+            made[k] = Math.max(0, demand - counts[k]);
+        }
+        return made;
+    }
+
+    private static long saturatedAdd(final long a, final long b)
+    {
+        final long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static long saturatedMultiply(final long a, final long b)
+    {
+        return a > Long.MAX_VALUE / b ? Long.MAX_VALUE : a * b;
+    }
+
+    /* Memoized search over the rungs for the greatest achievable appraisal of a target's runes. */
+    private final class Ladder
+    {
+        private final int[] needs;
+        /* Most runes of each rung which could ever be used, if carried up from below. */
+        private final long[] useful;
+        /* Highest rung which the target requires. */
+        private final int top;
+        private final Map<Long, Double> memo = new HashMap<>();
+
+        private Ladder(final int[] needs, final long[] useful, final int top)
+        {
+            this.needs = needs;
+            this.useful = useful;
+            this.top = top;
+        }
+
+        /* Greatest appraisal of the target's runes collectable from rung k upwards, given runes carried into k. */
+        private double best(final int k, final long carry)
+        {
+            final long key = (long)k << 56 | carry; // Carry never exceeds the runes owned, which fit in 56 bits.
+            final Double cached = memo.get(key);
+            if (cached != null) return cached;
+
+            final Rune rune = Rune.extension.fromOrdinal(k);
+            final long available = counts[k] + carry;
+            double best = 0;
+            /* Keep up to the need of this rung; upgrade the rest, carrying up no more than could be used. */
+            for (long kept = 0; kept <= Math.min(available, needs[k]); kept++)
+            {
+                double value = kept / rune.getRarity();
+                if (k < top)
+                    value += best(k + 1, Math.min((available - kept) / inputsPerUpgrade(rune), useful[k + 1]));
+                best = Math.max(best, value);
+            }
+            memo.put(key, best);
+            return best;
+        }
+    }
+
+    /**
+     * Defines a set of upgrades which complete a target.
+     *
+     * @since 3.0
+     */
+    public static final class Plan
+    {
+        private final List<Upgrade> upgrades;
+
+        private Plan(final List<Upgrade> upgrades)
+        {
+            this.upgrades = Collections.unmodifiableList(upgrades);
+        }
+
+        /**
+         * @return Upgrades, from the lowest rune to the highest, which must be performed in that order.
+         */
+        public List<Upgrade> getUpgrades()
+        {
+            return upgrades;
+        }
+
+        /**
+         * @return Total number of transmutations.
+         */
+        public long getTransmutations()
+        {
+            return upgrades.stream().mapToLong(Upgrade::getTransmutations).sum();
+        }
+
+        /**
+         * @return Total number of gems consumed.
+         */
+        public long getGems()
+        {
+            return upgrades.stream().filter(Upgrade::requiresGem).mapToLong(Upgrade::getTransmutations).sum();
+        }
+
+        /**
+         * @return String representation of the plan, such as `[3 Eld -> Tir x1]`.
+         */
+        @Override public String toString()
+        {
+            return upgrades.toString();
+        }
+    }
+
+    /**
+     * Defines repeated transmutations of one rune into the next.
+     *
+     * @since 3.0
+     */
+    public static final class Upgrade
+    {
+        private final Rune input;
+        private final long transmutations;
+
+        private Upgrade(final Rune input, final long transmutations)
+        {
+            this.input = input;
+            this.transmutations = transmutations;
+        }
+
+        /**
+         * @return Rune consumed by the upgrade.
+         */
+        public Rune getInput()
+        {
+            return input;
+        }
+
+        /**
+         * @return Rune made by the upgrade.
+         */
+        public Rune getOutput()
+        {
+            return Rune.extension.fromOrdinal(input.ordinal() + 1);
+        }
+
+        /**
+         * @return Number of transmutations, each making one rune.
+         */
+        public long getTransmutations()
+        {
+            return transmutations;
+        }
+
+        /**
+         * @return true if each transmutation also consumes a gem.
+         */
+        public boolean requiresGem()
+        {
+            return CubePlanner.requiresGem(input);
+        }
+
+        /**
+         * @return String representation of the upgrade, such as `3 Eld -> Tir x1`.
+         */
+        @Override public String toString()
+        {
+            return inputsPerUpgrade(input) + " " + input + (requiresGem() ? " + gem" : "")
+                    + " -> " + getOutput() + " x" + transmutations;
+        }
+    }
+}
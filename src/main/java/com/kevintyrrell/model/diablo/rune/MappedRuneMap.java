@@ -0,0 +1,339 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.model.diablo.rune;
+
+import com.kevintyrrell.model.util.CachedValue;
+import com.kevintyrrell.model.util.Saveable;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a rune map which lives in a memory-mapped file.
+ *
+ * Every mutation is applied directly to the mapped slot, so the operating system
+ * persists it without the map ever being re-encoded. Saving only forces the
+ * mapped pages to the storage medium; this may be done periodically in the
+ * background, bounding how much recent work a power loss may discard.
+ *
+ * The mapped file is its own save file. A regular rune map save file of the same
+ * filename is migrated only when the mapping is created, never over an existing one.
+ *
+ * File layout: [int] magic, [short] version, [short] padding,
+ * followed by a single PackedRuneStore slot.
+ *
+ * @since 3.0
+ */
+public class MappedRuneMap implements ReadOnlyRuneMap, Saveable, Closeable
+{
+    /**
+     * Extension of memory-mapped rune map files.
+     */
+    public static final String MAPPED_EXTENSION = ".map";
+
+    /* Size of the file header, aligning the slot to 8 bytes. */
+    private static final int HEADER_SIZE = 8;
+
+    private final String filename;
+    private final MappedByteBuffer mapping;
+    private final PackedRuneStore store;
+    private final PackedRuneStore.Cursor slot;
+    private final CachedValue<Map<Rune, Integer>> readOnlyRC;
+    private final AtomicBoolean unsavedChanges = new AtomicBoolean();
+    /* Background thread which periodically forces the mapping, if any. */
+    private final ScheduledExecutorService forcer;
+
+    /**
+     * Opens or creates a memory-mapped rune map, which is only forced upon `save`.
+     * A newly created mapping migrates the regular save file of the same filename, if any.
+     *
+     * @param filename Filename of the mapped file, excluding extension.
+     * @throws IOException If the file could not be opened or is malformed.
+     */
+    public MappedRuneMap(final String filename) throws IOException
+    {
+        this(filename, 0, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Opens or creates a memory-mapped rune map.
+     * A newly created mapping migrates the regular save file of the same filename, if any.
+     *
+     * @param filename Filename of the mapped file, excluding extension.
+     * @param period Period between forcing unsaved changes, or 0 to only force upon `save`.
+     * @param unit Unit of the period.
+     * @throws IOException If the file could not be opened or is malformed.
+     */
+    public MappedRuneMap(final String filename, final long period, final TimeUnit unit) throws IOException
+    {
+        if (period < 0) throw new IllegalArgumentException("Period must be non-negative.");
+        this.filename = requireNonNull(filename);
+        requireNonNull(unit);
+        final Path path = Saveable.pathOf(filename, MAPPED_EXTENSION);
+        Files.createDirectories(path.toAbsolutePath().getParent());
+
+        /* The mapping remains valid after the channel is closed. */
+        final boolean created;
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            final long size = channel.size();
+            if (size != 0 && size != HEADER_SIZE + PackedRuneStore.STRIDE)
+                throw new InvalidObjectException("Mapped rune map is of an unexpected size: " + size);
+            mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + PackedRuneStore.STRIDE);
+            /* A zeroed header is of a creation which never completed. */
+            created = size == 0 || mapping.getInt(0) == 0;
+            if (!created && (mapping.getInt(0) != Saveable.MAGIC
+                    || mapping.getShort(Integer.BYTES) != getFormatVersion()))
+                throw new InvalidObjectException("Mapped rune map header is malformed: " + filename);
+        }
+
+        mapping.position(HEADER_SIZE);
+        final ByteBuffer data = mapping.slice();
+        store = new PackedRuneStore(data);
+        slot = store.cursor();
+
+        readOnlyRC = new CachedValue<>()
+        {
+            @Override protected Map<Rune, Integer> recalculate()
+            {
+                return slot.getRunes();
+            }
+        };
+
+        if (created)
+        {
+            /* The header is written last, so a crash mid-migration leaves the mapping to be created again. */
+            Saveable.super.restore(filename);
+            mapping.putInt(0, Saveable.MAGIC);
+            mapping.putShort(Integer.BYTES, (short)getFormatVersion());
+            mapping.force();
+            unsavedChanges.set(false);
+        }
+
+        if (period == 0) forcer = null;
+        else
+        {
+            forcer = Executors.newSingleThreadScheduledExecutor(r ->
+            {
+                final Thread t = new Thread(r, MappedRuneMap.class.getSimpleName());
+                t.setDaemon(true);
+                return t;
+            });
+            forcer.scheduleWithFixedDelay(this::save, period, period, unit);
+        }
+    }
+
+    /**
+     * Moves a number of a specified rune into or out of the rune map.
+     *
+     * @param key Rune to move.
+     * @param diff Number of runes to add or remove.
+     */
+    public void moveRunes(final Rune key, final int diff)
+    {
+        if (diff > 0) addRunes(key, diff);
+        else if (diff < 0) tossRunes(key, -diff);
+    }
+
+    /**
+     * Adds a specified number of a rune to the rune map.
+     *
+     * @param key Rune to add.
+     * @param num Number of the specified rune to add.
+     */
+    public void addRunes(final Rune key, final int num)
+    {
+        if (num <= 0) throw new IllegalArgumentException("Number of runes must be positive.");
+        store.moveRunes(0, key, num);
+        modifyFlags();
+    }
+
+    /**
+     * Tosses out a specified number of a rune from the rune map.
+     *
+     * @param key Rune to toss.
+     * @param num Number of the specified rune to toss.
+     */
+    public void tossRunes(final Rune key, final int num)
+    {
+        if (num <= 0) throw new IllegalArgumentException("Number of runes must be positive.");
+        store.moveRunes(0, key, -num);
+        modifyFlags();
+    }
+
+    /* Updates the necessary flags that the rune map has changed. */
+    private void modifyFlags()
+    {
+        readOnlyRC.invalidate();
+        flagUnsavedChanges();
+    }
+
+    /**
+     * @return Read-only view of the rune map.
+     */
+    @Override public Map<Rune, Integer> getRunes()
+    {
+        return readOnlyRC.get();
+    }
+
+    /**
+     * @param rune Rune to count.
+     * @return Quantity of the rune in the rune map, or 0 if absent.
+     */
+    @Override public int count(final Rune rune)
+    {
+        return slot.count(rune);
+    }
+
+    /**
+     * @return Appraisal of the rune map.
+     * @see ReadOnlyRuneMap#appraise()
+     */
+    @Override public double appraise()
+    {
+        return slot.appraise();
+    }
+
+    /**
+     * @param other Other rune map to compare to.
+     * @return Progress towards matching another rune map, from [0, 1].
+     * @see ReadOnlyRuneMap#progressTowards(ReadOnlyRuneMap)
+     */
+    @Override public double progressTowards(final ReadOnlyRuneMap other)
+    {
+        return slot.progressTowards(other);
+    }
+
+    /**
+     * Forces all unsaved changes in the mapping to the storage medium.
+     *
+     * @return true if saving to the storage medium was successful.
+     */
+    @Override public boolean save()
+    {
+        if (!unsavedChanges.getAndSet(false)) return true; // No changes to save.
+        try
+        {
+            mapping.force();
+            return true;
+        }
+        catch (final RuntimeException e) // Thrown by some platforms for I/O errors.
+        {
+            flagUnsavedChanges();
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Does nothing, as the mapping is always current.
+     *
+     * A regular save file is migrated only when the mapping is created, so that a
+     * stale one never overwrites the mapping.
+     *
+     * @param filename Filename of the save file, excluding extension.
+     * @return false, as no save file is restored.
+     */
+    @Override public boolean restore(final String filename)
+    {
+        return false;
+    }
+
+    /**
+     * @return Filename of the mapped file, excluding extension.
+     */
+    @Override public String getFileName()
+    {
+        return filename;
+    }
+
+    /**
+     * Writes the rune map in the binary format of a RuneMap, enabling export.
+     *
+     * @param out Output to write to.
+     * @throws IOException If the output could not be written to.
+     * @see RuneMap#writeState(DataOutput)
+     */
+    @Override public void writeState(final DataOutput out) throws IOException
+    {
+        RuneSnapshot.writeRunes(getRunes(), out);
+    }
+
+    /**
+     * Replaces the contents of the mapping with those of a RuneMap's binary format.
+     *
+     * A newly created mapping therefore migrates a regular rune map save file.
+     *
+     * @param in Input to read from.
+     * @param version Version of the binary format which was written.
+     * @throws IOException If the input could not be read or is malformed.
+     * @see RuneMap#readState(DataInput, int)
+     */
+    @Override public void readState(final DataInput in, final int version) throws IOException
+    {
+        final RuneSnapshot runes = new RuneSnapshot(RuneSnapshot.readRunes(in), 0);
+        try
+        {
+            store.set(0, runes);
+        }
+        catch (final IllegalArgumentException e)
+        {
+            throw new InvalidObjectException(e.getMessage());
+        }
+        modifyFlags();
+    }
+
+    /**
+     * Stops any periodic forcing, then forces all unsaved changes.
+     */
+    @Override public void close()
+    {
+        if (forcer != null) forcer.shutdown();
+        save();
+    }
+
+    /**
+     * Flag provided by the inheriting class which controls
+     * whether or not the object has unsaved changes present.
+     * The flag itself is completely managed by Saveable.
+     *
+     * @return AtomicBoolean instance variable of the inheriting class.
+     */
+    @Override public AtomicBoolean getUnsavedChanges()
+    {
+        return unsavedChanges;
+    }
+}
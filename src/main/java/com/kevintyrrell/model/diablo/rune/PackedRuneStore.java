@@ -0,0 +1,291 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.model.diablo.rune;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a compact store of many rune inventories, packed into a single buffer.
+ *
+ * Each inventory occupies a slot of a fixed stride:
+ *  [33 x unsigned short] rune quantities, by ordinal
+ *  [6 bytes] padding, aligning the appraisal
+ *  [double] cached appraisal
+ *
+ * Compared to one RuneMap per inventory, the store holds no per-inventory
+ * objects and scans linearly through memory. A Cursor may be re-pointed at
+ * any slot, reading it as a ReadOnlyRuneMap without allocation.
+ *
+ * The store is not thread-safe.
+ *
+ * @since 3.0
+ */
+public final class PackedRuneStore
+{
+    /**
+     * Maximum quantity of a single rune within one inventory.
+     */
+    public static final int MAX_QUANTITY = 0xFFFF;
+
+    /* Byte layout of a single slot. */
+    private static final int RUNES = 33, APPRAISAL_OFFSET = 72;
+
+    /**
+     * Number of bytes occupied by a single inventory.
+     */
+    public static final int STRIDE = APPRAISAL_OFFSET + Double.BYTES;
+
+    /* Inverted rarity of each rune, by ordinal. */
+    private static final double[] weights = new double[RUNES];
+    static
+    {
+        assert Rune.extension.size() == RUNES;
+        for (final Rune rune : Rune.extension.values())
+            weights[rune.ordinal()] = 1 / rune.getRarity();
+    }
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+
+    /**
+     * Constructs an off-heap store of empty inventories.
+     *
+     * @param capacity Number of inventories the store can hold.
+     */
+    public PackedRuneStore(final int capacity)
+    {
+        this(ByteBuffer.allocateDirect(checkCapacity(capacity) * STRIDE).order(ByteOrder.nativeOrder()));
+    }
+
+    /**
+     * Constructs a store over an existing buffer, whose contents are used as-is.
+     *
+     * The byte order of the buffer is preserved.
+     *
+     * @param buffer Buffer which backs the store, starting at index 0.
+     */
+    public PackedRuneStore(final ByteBuffer buffer)
+    {
+        this.buffer = requireNonNull(buffer);
+        capacity = buffer.capacity() / STRIDE;
+    }
+
+    /* Validates capacity before allocating. */
+    private static int checkCapacity(final int capacity)
+    {
+        if (capacity <= 0 || capacity > Integer.MAX_VALUE / STRIDE)
+            throw new IllegalArgumentException("Capacity is out of bounds: " + capacity);
+        return capacity;
+    }
+
+    /**
+     * @return Number of inventories the store can hold.
+     */
+    public int capacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @param slot Slot of the inventory.
+     * @param rune Rune to count.
+     * @return Quantity of the rune in the inventory.
+     */
+    public int count(final int slot, final Rune rune)
+    {
+        return buffer.getShort(offsetOf(slot) + (requireNonNull(rune).ordinal() << 1)) & MAX_QUANTITY;
+    }
+
+    /**
+     * @param slot Slot of the inventory.
+     * @return Appraisal of the inventory.
+     * @see ReadOnlyRuneMap#appraise()
+     */
+    public double appraise(final int slot)
+    {
+        return buffer.getDouble(offsetOf(slot) + APPRAISAL_OFFSET);
+    }
+
+    /**
+     * Moves a number of a specified rune into or out of an inventory.
+     *
+     * @param slot Slot of the inventory.
+     * @param rune Rune to move.
+     * @param diff Number of runes to add or remove.
+     */
+    public void moveRunes(final int slot, final Rune rune, final int diff)
+    {
+        final int offset = offsetOf(slot);
+        final int index = offset + (requireNonNull(rune).ordinal() << 1);
+        final int quantity = (buffer.getShort(index) & MAX_QUANTITY) + diff;
+        if (quantity < 0) throw new IllegalArgumentException("Total rune quantity cannot be negative.");
+        if (quantity > MAX_QUANTITY)
+            throw new IllegalArgumentException("Total rune quantity cannot exceed " + MAX_QUANTITY);
+        buffer.putShort(index, (short)quantity);
+        reappraise(offset);
+    }
+
+    /**
+     * Replaces the contents of an inventory with those of a rune map.
+     *
+     * @param slot Slot of the inventory.
+     * @param runes Runes to copy into the inventory.
+     */
+    public void set(final int slot, final ReadOnlyRuneMap runes)
+    {
+        final int offset = offsetOf(slot);
+        requireNonNull(runes);
+        for (final Rune rune : Rune.extension.values())
+            if (runes.count(rune) > MAX_QUANTITY)
+                throw new IllegalArgumentException("Total rune quantity cannot exceed " + MAX_QUANTITY);
+        for (final Rune rune : Rune.extension.values())
+            buffer.putShort(offset + (rune.ordinal() << 1), (short)runes.count(rune));
+        reappraise(offset);
+    }
+
+    /**
+     * Empties an inventory.
+     *
+     * @param slot Slot of the inventory.
+     */
+    public void clear(final int slot)
+    {
+        final int offset = offsetOf(slot);
+        for (int i = 0; i < STRIDE; i += Long.BYTES)
+            buffer.putLong(offset + i, 0);
+    }
+
+    /* Recomputes the cached appraisal of the slot beginning at the offset. */
+    private void reappraise(final int offset)
+    {
+        double appraisal = 0;
+        for (int i = 0; i < RUNES; i++)
+            appraisal += weights[i] * (buffer.getShort(offset + (i << 1)) & MAX_QUANTITY);
+        buffer.putDouble(offset + APPRAISAL_OFFSET, appraisal);
+    }
+
+    /* Byte offset of a slot within the buffer. */
+    private int offsetOf(final int slot)
+    {
+        if (slot < 0 || slot >= capacity) throw new IndexOutOfBoundsException("Slot is out of bounds: " + slot);
+        return slot * STRIDE;
+    }
+
+    /**
+     * @return New cursor, positioned at the first slot.
+     */
+    public Cursor cursor()
+    {
+        return new Cursor();
+    }
+
+    /**
+     * Defines a flyweight read-only view of a single inventory of the store.
+     *
+     * Re-positioning the cursor and querying quantities, appraisal,
+     * or progress are free of allocation. Only `getRunes` allocates.
+     *
+     * @since 3.0
+     */
+    public final class Cursor implements ReadOnlyRuneMap
+    {
+        private int slot;
+
+        private Cursor() { }
+
+        /**
+         * @param slot Slot of the inventory to view.
+         * @return This cursor.
+         */
+        public Cursor moveTo(final int slot)
+        {
+            offsetOf(slot);
+            this.slot = slot;
+            return this;
+        }
+
+        /**
+         * @return Slot of the inventory being viewed.
+         */
+        public int getSlot()
+        {
+            return slot;
+        }
+
+        /**
+         * @param rune Rune to count.
+         * @return Quantity of the rune in the inventory.
+         */
+        @Override public int count(final Rune rune)
+        {
+            return PackedRuneStore.this.count(slot, rune);
+        }
+
+        /**
+         * @return Read-only copy of the inventory.
+         */
+        @Override public Map<Rune, Integer> getRunes()
+        {
+            final Map<Rune, Integer> runes = new EnumMap<>(Rune.class);
+            for (final Rune rune : Rune.extension.values())
+            {
+                final int quantity = count(rune);
+                if (quantity > 0) runes.put(rune, quantity);
+            }
+            return Collections.unmodifiableMap(runes);
+        }
+
+        /**
+         * @return Cached appraisal of the inventory.
+         */
+        @Override public double appraise()
+        {
+            return PackedRuneStore.this.appraise(slot);
+        }
+
+        /**
+         * Evaluates progress without allocation by counting each rune of both maps directly.
+         *
+         * @param other Other rune map to compare to.
+         * @return Progress towards matching another rune map, from [0, 1].
+         * @see ReadOnlyRuneMap#progressTowards(ReadOnlyRuneMap)
+         */
+        @Override public double progressTowards(final ReadOnlyRuneMap other)
+        {
+            final double total = requireNonNull(other).appraise();
+            if (total == 0) return 1; // Divide by zero protection.
+            final int offset = slot * STRIDE;
+            final List<Rune> runes = Rune.extension.values();
+            double sum = 0;
+            for (int i = 0; i < RUNES; i++)
+            {
+                final int have = buffer.getShort(offset + (i << 1)) & MAX_QUANTITY;
+                if (have > 0) sum += weights[i] * Math.min(have, other.count(runes.get(i)));
+            }
+            return sum / total;
+        }
+    }
+}
@@ -40,6 +40,15 @@ public interface ReadOnlyRuneMap
      */
     Map<Rune, Integer> getRunes();
 
+    /**
+     * @param rune Rune to count.
+     * @return Quantity of the rune in the rune map, or 0 if absent.
+     */
+    default int count(final Rune rune)
+    {
+        return requireNonNull(getRunes()).getOrDefault(requireNonNull(rune), 0);
+    }
+
     /**
      * Appraises the rarity of a rune map.
      *
@@ -50,6 +59,18 @@ public interface ReadOnlyRuneMap
      */
     double appraise();
 
+    /**
+     * Copies the rune map into an immutable snapshot.
+     *
+     * Rune maps which are immutable, or already publish immutable snapshots, return them without copying.
+     *
+     * @return Immutable rune map equal to this one as of the call.
+     */
+    default ReadOnlyRuneMap snapshot()
+    {
+        return RuneSnapshot.copyOf(this, 0);
+    }
+
     /**
      * Evaluates the progress towards collecting all runes from another rune map.
      *
@@ -0,0 +1,320 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.model.diablo.rune;
+
+import com.kevintyrrell.model.util.SaveGroup;
+import com.kevintyrrell.model.util.Saveable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a write-ahead journal of rune map changes.
+ *
+ * Each change is appended as a fixed-size record of the rune ordinal and
+ * a signed quantity, so a mutation costs a few bytes of sequential I/O
+ * rather than a rewrite of the whole save file.
+ *
+ * Records are buffered in-memory until `commit`, which writes them and
+ * syncs the journal once. Concurrent commits are grouped: a commit whose
+ * records were already synced by another thread returns immediately.
+ *
+ * Once enough records accumulate, a commit compacts the journal: a fresh
+ * snapshot of the rune map is written atomically, then the journal is reset.
+ * Every record carries an implicit sequence number, and the snapshot stores the
+ * sequence it includes, so a crash at any point during compaction is recoverable.
+ *
+ * Journal layout: [int] MAGIC, [long] base sequence, then records of [byte] ordinal, [int] quantity.
+ * Snapshot layout: [long] sequence, then the rune map as written by Saveable#toBytes().
+ *
+ * @since 3.0
+ */
+public final class RuneJournal implements Closeable
+{
+    /**
+     * File extension of the journal.
+     */
+    public static final String JOURNAL_EXTENSION = ".journal";
+
+    /**
+     * File extension of the snapshot.
+     */
+    public static final String SNAPSHOT_EXTENSION = ".snapshot";
+
+    /**
+     * Default number of records after which the journal is compacted.
+     */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 4096;
+
+    /* Size in bytes of the journal header and of each record. */
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES, RECORD_SIZE = Byte.BYTES + Integer.BYTES;
+
+    private final RuneMap runes;
+    private final Path journalPath, snapshotPath;
+    private final int compactionThreshold;
+    /* Guards the sync of the journal file, separately from appends. */
+    private final Object syncLock = new Object();
+
+    private FileChannel channel;
+    /* Records which have been appended but not yet written. */
+    private ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 64);
+    /* Sequence of the last appended, written/synced, and snapshotted records. */
+    private long appendedSeq, durableSeq, snapshotSeq;
+
+    /**
+     * Opens a journal with the default compaction threshold.
+     *
+     * @param filename Filename of the journal and snapshot, excluding extension.
+     * @param runes Rune map to recover and then journal.
+     * @throws IOException If the journal or snapshot could not be read.
+     * @see RuneJournal#RuneJournal(String, RuneMap, int)
+     */
+    public RuneJournal(final String filename, final RuneMap runes) throws IOException
+    {
+        this(filename, runes, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Opens a journal, recovering the state of the rune map.
+     *
+     * The rune map's contents are replaced by the snapshot, if any, after which
+     * all journaled records are replayed. Once recovered, all further changes of
+     * the rune map are recorded until the journal is closed.
+     *
+     * @param filename Filename of the journal and snapshot, excluding extension.
+     * @param runes Rune map to recover and then journal.
+     * @param compactionThreshold Number of records after which the journal is compacted.
+     * @throws IOException If the journal or snapshot could not be read.
+     */
+    public RuneJournal(final String filename, final RuneMap runes, final int compactionThreshold) throws IOException
+    {
+        if (compactionThreshold <= 0) throw new IllegalArgumentException("Compaction threshold must be positive.");
+        this.runes = requireNonNull(runes);
+        this.compactionThreshold = compactionThreshold;
+        journalPath = Saveable.pathOf(requireNonNull(filename), JOURNAL_EXTENSION);
+        snapshotPath = Saveable.pathOf(filename, SNAPSHOT_EXTENSION);
+        Files.createDirectories(journalPath.toAbsolutePath().getParent());
+
+        recover();
+        runes.setJournal(this);
+    }
+
+    /* Restores the snapshot, replays the journal, and truncates any torn trailing record. */
+    private void recover() throws IOException
+    {
+        if (Files.exists(snapshotPath))
+        {
+            final byte[] bytes = Files.readAllBytes(snapshotPath);
+            snapshotSeq = ByteBuffer.wrap(bytes).getLong();
+            runes.fromBytes(Arrays.copyOfRange(bytes, Long.BYTES, bytes.length));
+        }
+
+        channel = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE)
+        {
+            resetJournal(snapshotSeq);
+            appendedSeq = durableSeq = snapshotSeq;
+            return;
+        }
+
+        final ByteBuffer journal = ByteBuffer.allocate((int)channel.size());
+        while (journal.hasRemaining() && channel.read(journal, journal.position()) >= 0);
+        journal.flip();
+        if (journal.getInt() != Saveable.MAGIC)
+            throw new IOException("Journal is not of the journal format: " + journalPath);
+        long seq = journal.getLong();
+        while (journal.remaining() >= RECORD_SIZE)
+        {
+            final int ordinal = journal.get() & 0xFF, diff = journal.getInt();
+            if (ordinal >= Rune.extension.size() || diff == 0) // Corrupt record; discard the remainder.
+            {
+                journal.position(journal.position() - RECORD_SIZE);
+                break;
+            }
+            if (++seq > snapshotSeq) // Records at or below the snapshot are already included.
+                runes.moveRunes(Rune.extension.fromOrdinal(ordinal), diff);
+        }
+
+        channel.truncate(journal.position());
+        channel.position(journal.position());
+        appendedSeq = durableSeq = seq;
+    }
+
+    /* Replaces the journal with an empty journal beginning after the specified sequence. */
+    private void resetJournal(final long baseSeq) throws IOException
+    {
+        if (channel != null) channel.close();
+        SaveGroup.writeAtomically(journalPath,
+                ByteBuffer.allocate(HEADER_SIZE).putInt(Saveable.MAGIC).putLong(baseSeq).array());
+        channel = FileChannel.open(journalPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+
+    /**
+     * Appends a change to the in-memory buffer of the journal.
+     *
+     * @param rune Rune which changed.
+     * @param diff Signed quantity of the change.
+     */
+    synchronized void append(final Rune rune, final int diff)
+    {
+        assert rune != null;
+        assert diff != 0;
+        if (buffer.remaining() < RECORD_SIZE)
+        {
+            final ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            buffer = larger.put(buffer);
+        }
+        buffer.put((byte)rune.ordinal()).putInt(diff);
+        appendedSeq++;
+    }
+
+    /**
+     * Writes and syncs all appended records.
+     *
+     * If the number of records since the last snapshot exceeds
+     * the compaction threshold, the journal is compacted afterwards.
+     *
+     * @throws IOException If the journal could not be written to.
+     */
+    public void commit() throws IOException
+    {
+        final long target;
+        synchronized (this)
+        {
+            target = appendedSeq;
+        }
+        synchronized (syncLock)
+        {
+            if (durableSeq >= target) return; // Another commit already synced these records.
+            writePending();
+            if (durableSeq - snapshotSeq >= compactionThreshold)
+                compact();
+        }
+    }
+
+    /* Writes and syncs the buffered records. Caller must hold the sync lock. */
+    private void writePending() throws IOException
+    {
+        assert Thread.holdsLock(syncLock);
+        final ByteBuffer pending;
+        final long seq;
+        synchronized (this)
+        {
+            if (buffer.position() == 0) return;
+            buffer.flip();
+            pending = ByteBuffer.allocate(buffer.remaining()).put(buffer);
+            buffer.clear();
+            seq = appendedSeq;
+        }
+        pending.flip();
+        while (pending.hasRemaining()) channel.write(pending);
+        channel.force(false);
+        durableSeq = seq;
+    }
+
+    /**
+     * Writes a snapshot of the rune map, then resets the journal.
+     *
+     * The rune map may be modified concurrently. A mutator publishes and records its
+     * change while holding the rune map's monitor, so the snapshot and its sequence are
+     * taken under that monitor, then the journal's, in that order, and always agree.
+     *
+     * @throws IOException If the snapshot or journal could not be written.
+     */
+    public void compact() throws IOException
+    {
+        synchronized (syncLock)
+        {
+            writePending();
+            final long seq;
+            final byte[] state;
+            final int included;
+            synchronized (runes)
+            {
+                synchronized (this)
+                {
+                    seq = appendedSeq;
+                    state = runes.toBytes();
+                    included = buffer.position();
+                }
+            }
+
+            SaveGroup.writeAtomically(snapshotPath,
+                    ByteBuffer.allocate(Long.BYTES + state.length).putLong(seq).put(state).array());
+            snapshotSeq = seq;
+            resetJournal(seq);
+            synchronized (this)
+            {
+                /* Records appended since the write are included in the snapshot, so drop them. */
+                buffer.flip();
+                buffer.position(included);
+                buffer.compact();
+            }
+            durableSeq = seq;
+        }
+    }
+
+    /**
+     * @return Sequence number of the most recently appended record.
+     */
+    public synchronized long getSequence()
+    {
+        return appendedSeq;
+    }
+
+    /**
+     * @return Sequence number of the most recently synced record.
+     */
+    public long getDurableSequence()
+    {
+        synchronized (syncLock)
+        {
+            return durableSeq;
+        }
+    }
+
+    /**
+     * Commits all appended records, detaches from the rune map, and closes the journal.
+     *
+     * @throws IOException If the journal could not be written to.
+     */
+    @Override public void close() throws IOException
+    {
+        try
+        {
+            commit();
+        }
+        finally
+        {
+            runes.setJournal(null);
+            channel.close();
+        }
+    }
+}
@@ -18,10 +18,15 @@
 
 package com.kevintyrrell.model.diablo.rune;
 
-import com.kevintyrrell.model.util.CachedValue;
 import com.kevintyrrell.model.util.Saveable;
 
-import java.util.Collections;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -34,51 +39,46 @@ import static java.util.Objects.requireNonNull;
 /**
  * Defines an assortment of Runes.
  *
+ * The runes are held as an immutable, versioned snapshot. Each change copies the current
+ * snapshot, applies itself, and publishes the result as the next version, so readers
+ * never block and never observe a change half-applied. Changes are serialized amongst
+ * themselves, but never wait on readers.
+ *
  * @since 3.0
  */
 public class RuneMap implements ReadOnlyRuneMap, Saveable
 {
-    private final Map<Rune, Integer> runeCount;
-    private transient final CachedValue<Map<Rune, Integer>> readOnlyRC;
-    private transient final CachedValue<Double> appraisal;
+    /* Pinned to the value computed for legacy saves, which were written without one. */
+    private static final long serialVersionUID = 6332984142612747612L;
+    /* Serialized form, unchanged from legacy saves which held a mutable map. */
+    private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField("runeCount", Map.class) };
+
+    /* Most recently published snapshot. */
+    private transient volatile RuneSnapshot current;
+    /* Journal which records each change, if any. */
+    private transient RuneJournal journal;
 
     /**
      * Constructs an empty rune map.
      */
     public RuneMap()
     {
-        this(new EnumMap<>(Rune.class));
+        this(RuneSnapshot.EMPTY);
     }
 
     public RuneMap(final Stream<Rune> stream)
     {
-        this(requireNonNull(stream)
+        this(new RuneSnapshot(requireNonNull(stream)
                 .collect(Collectors.toMap(
                         Function.identity(), rune -> 1, Integer::sum,
-                        () -> new EnumMap<>(Rune.class))));
+                        () -> new EnumMap<>(Rune.class))), 0));
     }
 
     /* Shared constructor. */
-    private RuneMap(final Map<Rune, Integer> runes)
+    private RuneMap(final RuneSnapshot runes)
     {
         assert runes != null;
-        runeCount = runes;
-
-        readOnlyRC = new CachedValue<>()
-        {
-            @Override protected Map<Rune, Integer> recalculate()
-            {
-                return Collections.unmodifiableMap(runeCount);
-            }
-        };
-
-        appraisal = new CachedValue<>()
-        {
-            @Override protected Double recalculate()
-            {
-                return RuneMap.appraiseRunes(RuneMap.this);
-            }
-        };
+        current = runes;
     }
 
     /**
@@ -89,8 +89,8 @@ public class RuneMap implements ReadOnlyRuneMap, Saveable
      */
     public void moveRunes(final Rune key, final int diff)
     {
-        runeCount.merge(requireNonNull(key), diff, RuneMap::runeRemapper);
-        modifyFlags();
+        if (diff > 0) addRunes(key, diff);
+        else if (diff < 0) tossRunes(key, -diff);
     }
 
     /**
@@ -99,11 +99,14 @@ public class RuneMap implements ReadOnlyRuneMap, Saveable
      * @param key Rune to add.
      * @param num Number of the specified rune to add.
      */
-    public void addRunes(final Rune key, final int num)
+    public synchronized void addRunes(final Rune key, final int num)
     {
         if (num <= 0) throw new IllegalArgumentException("Number of runes must be positive.");
-        runeCount.merge(requireNonNull(key), num, RuneMap::runeAddRemapper);
-        modifyFlags();
+        final EnumMap<Rune, Integer> runes = copy();
+        runes.merge(requireNonNull(key), num, RuneMap::runeAddRemapper);
+        publish(runes);
+        record(key, num);
+        flagUnsavedChanges();
     }
 
     /**
@@ -112,38 +115,137 @@ public class RuneMap implements ReadOnlyRuneMap, Saveable
      * @param key Rune to toss.
      * @param num Number of the specified rune to toss.
      */
-    public void tossRunes(final Rune key, final int num)
+    public synchronized void tossRunes(final Rune key, final int num)
     {
         if (num <= 0) throw new IllegalArgumentException("Number of runes must be positive.");
-        runeCount.merge(requireNonNull(key), num, RuneMap::runeTossRemapper);
-        modifyFlags();
+        if (!current.getRunes().containsKey(requireNonNull(key)))
+            throw new IllegalArgumentException("Total rune quantity cannot be negative.");
+        final EnumMap<Rune, Integer> runes = copy();
+        runes.merge(key, num, RuneMap::runeTossRemapper);
+        publish(runes);
+        record(key, -num);
+        flagUnsavedChanges();
     }
 
     /**
-     * Adds all of the runes in a stream into the rune map.
+     * Adds all of the runes in a stream into the rune map, as a single version.
+     *
+     * The stream is consumed before the rune map changes, so a stream
+     * which fails partway leaves the rune map and its journal unchanged.
      *
      * @param stream Stream of runes.
      */
-    public void addRunes(final Stream<Rune> stream)
+    public synchronized void addRunes(final Stream<Rune> stream)
     {
-        requireNonNull(stream)
-                .forEach(r -> runeCount.merge(r, 1, RuneMap::runeRemapper));
-        modifyFlags();
+        final int[] delta = new int[Rune.extension.size()];
+        requireNonNull(stream).forEach(r -> delta[r.ordinal()]++);
+        applyDelta(delta);
     }
 
-    /* Updates the necessary flags that the rune map has changed. */
-    private void modifyFlags()
+    /**
+     * Applies a change in quantity to every rune at once, as a single version.
+     *
+     * The delta is validated as a whole before any rune is moved; if any
+     * quantity would become negative, the rune map is left unchanged.
+     *
+     * @param delta Change in quantity of each rune, indexed by ordinal.
+     */
+    public synchronized void applyDelta(final int[] delta)
     {
-        appraisal.invalidate();
+        if (requireNonNull(delta).length != Rune.extension.size())
+            throw new IllegalArgumentException("Delta must have one quantity per rune.");
+        boolean changed = false;
+        for (int i = 0; i < delta.length; i++)
+        {
+            if (delta[i] == 0) continue;
+            changed = true;
+            final long quantity = (long)count(Rune.extension.fromOrdinal(i)) + delta[i];
+            if (quantity < 0) throw new IllegalArgumentException("Total rune quantity cannot be negative.");
+            if (quantity > Integer.MAX_VALUE) throw new IllegalArgumentException("Total rune quantity is too large.");
+        }
+        if (!changed) return;
+
+        final EnumMap<Rune, Integer> runes = copy();
+        for (int i = 0; i < delta.length; i++)
+        {
+            if (delta[i] == 0) continue;
+            final Rune key = Rune.extension.fromOrdinal(i);
+            final int quantity = count(key) + delta[i];
+            if (quantity > 0) runes.put(key, quantity);
+            else runes.remove(key);
+        }
+        publish(runes);
+        for (int i = 0; i < delta.length; i++)
+            if (delta[i] != 0) record(Rune.extension.fromOrdinal(i), delta[i]);
         flagUnsavedChanges();
     }
 
+    /* Mutable copy of the current snapshot's runes. */
+    private EnumMap<Rune, Integer> copy()
+    {
+        final EnumMap<Rune, Integer> runes = new EnumMap<>(Rune.class);
+        runes.putAll(current.getRunes());
+        return runes;
+    }
+
+    /* Publishes the runes as the next version; callers must hold the monitor. */
+    private void publish(final EnumMap<Rune, Integer> runes)
+    {
+        current = new RuneSnapshot(runes, current.getVersion() + 1);
+    }
+
+    /* Records a change into the journal, if one is attached. */
+    private void record(final Rune key, final int diff)
+    {
+        if (journal != null) journal.append(key, diff);
+    }
+
+    /**
+     * Attaches or detaches the journal which records each change.
+     *
+     * @param journal Journal to attach, or null to detach.
+     */
+    synchronized void setJournal(final RuneJournal journal)
+    {
+        this.journal = journal;
+    }
+
+    /**
+     * Takes the current snapshot of the rune map in O(1).
+     *
+     * The snapshot is unaffected by later changes; bind to one snapshot
+     * when several reads, such as the comparisons of a sort, must agree.
+     *
+     * @return Current snapshot of the rune map.
+     */
+    @Override public RuneSnapshot snapshot()
+    {
+        return current;
+    }
+
     /**
-     * @return Read-only view of the rune map.
+     * @return Version of the current snapshot, which increases with every change.
+     */
+    public long getVersion()
+    {
+        return current.getVersion();
+    }
+
+    /**
+     * @return Immutable runes of the current snapshot.
      */
     @Override public Map<Rune, Integer> getRunes()
     {
-        return readOnlyRC.get();
+        return current.getRunes();
+    }
+
+    /**
+     * @param rune Rune to count.
+     * @return Quantity of the rune in the rune map, or 0 if absent.
+     */
+    @Override public int count(final Rune rune)
+    {
+        return current.count(rune);
     }
 
     /**
@@ -156,16 +258,71 @@ public class RuneMap implements ReadOnlyRuneMap, Saveable
      */
     @Override public double appraise()
     {
-        return appraisal.get();
+        return current.appraise();
+    }
+
+    /**
+     * @param other Other rune map to compare to.
+     * @return Progress of the current snapshot towards the other, from [0, 1].
+     * @see ReadOnlyRuneMap#progressTowards(ReadOnlyRuneMap)
+     */
+    @Override public double progressTowards(final ReadOnlyRuneMap other)
+    {
+        return current.progressTowards(other);
     }
 
-    /* Helper method to enable caching. */
-    protected static double appraiseRunes(final RuneMap runes)
+    /**
+     * Writes the rune map in its binary format.
+     *
+     * Format: [byte] number of distinct runes, then per rune: [byte] ordinal, [int] quantity.
+     *
+     * @param out Output to write to.
+     * @throws IOException If the output could not be written to.
+     */
+    @Override public void writeState(final DataOutput out) throws IOException
     {
-        assert runes != null;
-        return runes.getRunes().entrySet().stream()
-                .mapToDouble(e -> (1 / e.getKey().getRarity()) * e.getValue())
-                .sum();
+        RuneSnapshot.writeRunes(current.getRunes(), out);
+    }
+
+    /**
+     * Replaces the contents of the rune map with those of its binary format.
+     *
+     * @param in Input to read from.
+     * @param version Version of the binary format which was written.
+     * @throws IOException If the input could not be read or is malformed.
+     */
+    @Override public void readState(final DataInput in, final int version) throws IOException
+    {
+        final EnumMap<Rune, Integer> runes = RuneSnapshot.readRunes(in);
+        synchronized (this)
+        {
+            publish(runes);
+        }
+    }
+
+    /* Writes the runes in the legacy serialized form. */
+    private void writeObject(final ObjectOutputStream out) throws IOException
+    {
+        final ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("runeCount", copy());
+        out.writeFields();
+    }
+
+    /* Reads the runes from the legacy serialized form. */
+    @SuppressWarnings("unchecked")
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        final Object runes = in.readFields().get("runeCount", null);
+        if (!(runes instanceof Map)) throw new InvalidObjectException("Rune map save data is malformed.");
+        final EnumMap<Rune, Integer> copy = new EnumMap<>(Rune.class);
+        copy.putAll((Map<Rune, Integer>)runes);
+        current = new RuneSnapshot(copy, 0);
+    }
+
+    /* Legacy serialized rune maps lack their transient state, so re-construct them. */
+    private Object readResolve()
+    {
+        return new RuneMap(current);
     }
 
     /* Callback function for adding runes. */
@@ -186,15 +343,6 @@ public class RuneMap implements ReadOnlyRuneMap, Saveable
         return num < oldValue ? oldValue - num : null; // Remove entry if total is zero.
     }
 
-
-    /* Callback function which modifies the quantity of a rune. */
-    private static Integer runeRemapper(final Integer oldValue, final Integer diff)
-    {
-        assert oldValue > 0;
-        assert diff != null;
-        return diff > 0 ? runeAddRemapper(oldValue, diff) : runeTossRemapper(oldValue, diff);
-    }
-
     private final AtomicBoolean unsavedChanges = new AtomicBoolean();
 
     /**
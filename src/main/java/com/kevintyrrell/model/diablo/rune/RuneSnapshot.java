@@ -0,0 +1,158 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.model.diablo.rune;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines an immutable copy of a rune map, stamped with the version at which it was taken.
+ *
+ * Snapshots never change once published, so any number of threads may read one without locks;
+ * a sort which compares progress against a single snapshot cannot observe counts changing mid-sort.
+ *
+ * @since 3.0
+ */
+public final class RuneSnapshot implements ReadOnlyRuneMap
+{
+    /**
+     * Snapshot of an empty rune map which has never changed.
+     */
+    public static final RuneSnapshot EMPTY = new RuneSnapshot(new EnumMap<>(Rune.class), 0);
+
+    private final Map<Rune, Integer> runes;
+    private final long version;
+    private final double appraisal;
+
+    /**
+     * @param runes Runes of the snapshot, which the snapshot takes ownership of.
+     * @param version Version of the rune map at which the snapshot was taken.
+     */
+    RuneSnapshot(final EnumMap<Rune, Integer> runes, final long version)
+    {
+        this.runes = Collections.unmodifiableMap(requireNonNull(runes));
+        this.version = version;
+        appraisal = runes.entrySet().stream()
+                .mapToDouble(e -> (1 / e.getKey().getRarity()) * e.getValue())
+                .sum();
+    }
+
+    /**
+     * Copies the runes of any rune map into a snapshot.
+     *
+     * @param runes Rune map to copy.
+     * @param version Version to stamp the snapshot with.
+     * @return Snapshot of the rune map.
+     */
+    public static RuneSnapshot copyOf(final ReadOnlyRuneMap runes, final long version)
+    {
+        final EnumMap<Rune, Integer> copy = new EnumMap<>(Rune.class);
+        copy.putAll(requireNonNull(runes).getRunes());
+        return new RuneSnapshot(copy, version);
+    }
+
+    /**
+     * Writes runes in the binary format shared by every rune map.
+     *
+     * Format: [byte] number of distinct runes, then per rune: [byte] ordinal, [int] quantity.
+     *
+     * @param runes Runes to write, each of a positive quantity.
+     * @param out Output to write to.
+     * @throws IOException If the output could not be written to.
+     */
+    static void writeRunes(final Map<Rune, Integer> runes, final DataOutput out) throws IOException
+    {
+        out.writeByte(runes.size());
+        for (final Map.Entry<Rune, Integer> e : runes.entrySet())
+        {
+            out.writeByte(e.getKey().ordinal());
+            out.writeInt(e.getValue());
+        }
+    }
+
+    /**
+     * Reads runes of the binary format shared by every rune map.
+     *
+     * @param in Input to read from.
+     * @return Runes which were read.
+     * @throws IOException If the input could not be read or is malformed.
+     * @see RuneSnapshot#writeRunes(Map, DataOutput)
+     */
+    static EnumMap<Rune, Integer> readRunes(final DataInput in) throws IOException
+    {
+        final int size = in.readUnsignedByte();
+        final EnumMap<Rune, Integer> runes = new EnumMap<>(Rune.class);
+        for (int i = 0; i < size; i++)
+        {
+            final int ordinal = in.readUnsignedByte(), quantity = in.readInt();
+            if (ordinal >= Rune.extension.size() || quantity <= 0)
+                throw new InvalidObjectException("Rune map save data is malformed.");
+            runes.put(Rune.extension.fromOrdinal(ordinal), quantity);
+        }
+        return runes;
+    }
+
+    /**
+     * @return Version of the rune map at which the snapshot was taken; greater versions are more recent.
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * @return Immutable runes of the snapshot.
+     */
+    @Override public Map<Rune, Integer> getRunes()
+    {
+        return runes;
+    }
+
+    /**
+     * @param rune Rune to count.
+     * @return Quantity of the rune in the snapshot, or 0 if absent.
+     */
+    @Override public int count(final Rune rune)
+    {
+        return runes.getOrDefault(requireNonNull(rune), 0);
+    }
+
+    /**
+     * @return Appraisal of the snapshot, computed once when it was taken.
+     */
+    @Override public double appraise()
+    {
+        return appraisal;
+    }
+
+    /**
+     * @return This snapshot, as it is already immutable.
+     */
+    @Override public RuneSnapshot snapshot()
+    {
+        return this;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.model.diablo.rune;
+
+import com.kevintyrrell.model.diablo.runeword.RunewordCatalog;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a hypothetical rune map: signed changes layered over a snapshot of a base inventory.
+ *
+ * Answers questions such as "what if I got a Ber and a Jah?" without copying the base.
+ * Overlays are immutable; each change returns a new overlay over the same base, so
+ * several hypotheses may branch from one inventory. Progress towards the whole catalog is
+ * derived from the base's progress vector, recomputing only runewords containing a changed rune.
+ *
+ * @since 3.0
+ */
+public final class WhatIfRuneMap implements ReadOnlyRuneMap
+{
+    /* Immutable base inventory. */
+    private final ReadOnlyRuneMap base;
+    /* Signed change in quantity of each rune, by ordinal. */
+    private final int[] deltas;
+    private final double appraisal;
+    /* Lazily built map of the resulting runes; racy but idempotent. */
+    private Map<Rune, Integer> runes;
+
+    /**
+     * @param base Inventory to layer changes over; only its snapshot as of this call is used.
+     */
+    public WhatIfRuneMap(final ReadOnlyRuneMap base)
+    {
+        this(requireNonNull(base).snapshot(), new int[Rune.extension.size()]);
+    }
+
+    /* Shared constructor. */
+    private WhatIfRuneMap(final ReadOnlyRuneMap base, final int[] deltas)
+    {
+        assert base != null;
+        assert deltas.length == Rune.extension.size();
+        this.base = base;
+        this.deltas = deltas;
+        double appraisal = base.appraise();
+        for (int i = 0; i < deltas.length; i++)
+            if (deltas[i] != 0) appraisal += (1 / Rune.extension.fromOrdinal(i).getRarity()) * deltas[i];
+        this.appraisal = appraisal;
+    }
+
+    /**
+     * @param key Rune to move.
+     * @param diff Number of runes to hypothetically add, or remove if negative.
+     * @return Overlay with the change applied in addition to those of this overlay.
+     * @throws IllegalArgumentException If the quantity of the rune would become negative.
+     */
+    public WhatIfRuneMap with(final Rune key, final int diff)
+    {
+        final int i = requireNonNull(key).ordinal();
+        final long quantity = (long)count(key) + diff;
+        if (quantity < 0) throw new IllegalArgumentException("Total rune quantity cannot be negative.");
+        if (quantity > Integer.MAX_VALUE) throw new IllegalArgumentException("Total rune quantity is too large.");
+        final int[] copy = deltas.clone();
+        copy[i] += diff;
+        return new WhatIfRuneMap(base, copy);
+    }
+
+    /**
+     * @return Base inventory, as of when the first overlay was created.
+     */
+    public ReadOnlyRuneMap getBase()
+    {
+        return base;
+    }
+
+    /**
+     * @param rune Rune whose change to get.
+     * @return Signed change in quantity of the rune relative to the base.
+     */
+    public int getDelta(final Rune rune)
+    {
+        return deltas[requireNonNull(rune).ordinal()];
+    }
+
+    /**
+     * @return Runes whose quantities differ from the base.
+     */
+    public Set<Rune> getChangedRunes()
+    {
+        final Set<Rune> changed = EnumSet.noneOf(Rune.class);
+        for (int i = 0; i < deltas.length; i++)
+            if (deltas[i] != 0) changed.add(Rune.extension.fromOrdinal(i));
+        return changed;
+    }
+
+    /**
+     * Derives progress towards every runeword of a catalog from the base's progress vector.
+     *
+     * @param catalog Catalog of the progress vector.
+     * @param baseProgress Progress vector of the base, which is not modified.
+     * @return Progress towards each runeword with the changes applied, indexed by id.
+     * @see RunewordCatalog#progress(ReadOnlyRuneMap)
+     */
+    public double[] progress(final RunewordCatalog catalog, final double[] baseProgress)
+    {
+        return requireNonNull(catalog).progress(baseProgress, this, getChangedRunes());
+    }
+
+    /**
+     * @return Read-only map of the runes with the changes applied, built upon first use.
+     */
+    @Override public Map<Rune, Integer> getRunes()
+    {
+        Map<Rune, Integer> runes = this.runes;
+        if (runes == null)
+        {
+            final EnumMap<Rune, Integer> map = new EnumMap<>(Rune.class);
+            for (final Rune rune : Rune.extension.values())
+            {
+                final int quantity = count(rune);
+                if (quantity > 0) map.put(rune, quantity);
+            }
+            this.runes = runes = Collections.unmodifiableMap(map);
+        }
+        return runes;
+    }
+
+    /**
+     * @param rune Rune to count.
+     * @return Quantity of the rune with the changes applied, or 0 if absent.
+     */
+    @Override public int count(final Rune rune)
+    {
+        return base.count(rune) + deltas[requireNonNull(rune).ordinal()];
+    }
+
+    /**
+     * @return Appraisal of the base, adjusted by the changes.
+     */
+    @Override public double appraise()
+    {
+        return appraisal;
+    }
+
+    /**
+     * Evaluates progress without building the map of runes, visiting only the other map's runes.
+     *
+     * @param other Other rune map to compare to.
+     * @return Progress towards matching another rune map, from [0, 1].
+     * @see ReadOnlyRuneMap#progressTowards(ReadOnlyRuneMap)
+     */
+    @Override public double progressTowards(final ReadOnlyRuneMap other)
+    {
+        final Map<Rune, Integer> b = requireNonNull(other).getRunes();
+        if (b.isEmpty()) return 1; // Divide by zero protection.
+        /* Same terms, in the same order, as the default implementation, so results agree exactly. */
+        return b.entrySet().stream()
+                .filter(e -> count(e.getKey()) > 0)
+                .mapToDouble(e -> (1 / e.getKey().getRarity()) * Math.min(count(e.getKey()), e.getValue()))
+                .sum() / other.appraise();
+    }
+
+    /**
+     * @return This overlay, as it is already immutable.
+     */
+    @Override public WhatIfRuneMap snapshot()
+    {
+        return this;
+    }
+
+    /**
+     * @return String representation of the changes, such as `{Ber=+1, Tir=-2}`.
+     */
+    @Override public String toString()
+    {
+        final StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < deltas.length; i++)
+            if (deltas[i] != 0)
+                sb.append(sb.length() > 1 ? ", " : "").append(Rune.extension.fromOrdinal(i).getName())
+                        .append('=').append(deltas[i] > 0 ? "+" : "").append(deltas[i]);
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.model.diablo.runeword;
+
+import com.kevintyrrell.model.diablo.ItemType;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a player's filter preferences as a small immutable value, evaluated by a shared RunewordCatalog.
+ *
+ * Ignored runewords are a bitset of ids and filtered item types a bitmask of ordinals, so an
+ * overlay costs a few words of memory regardless of the catalog. Every change returns a new overlay.
+ *
+ * @since 3.0
+ */
+public final class FilterOverlay
+{
+    /* Greatest runeword id which an overlay may ignore, as ids are saved as unsigned shorts. */
+    static final int MAX_ID = 0xFFFF;
+
+    /**
+     * Overlay which filters nothing but runewords below the default progress threshold.
+     */
+    public static final FilterOverlay DEFAULT =
+            new FilterOverlay(new long[0], 0, RunewordFilter.DEFAULT_COMPLETION_THRESHOLD);
+
+    /* Bitset of ignored runeword ids. */
+    private final long[] ignored;
+    /* Bitmask of filtered item type ordinals. */
+    private final int typeMask;
+    private final float progressThreshold;
+
+    private FilterOverlay(final long[] ignored, final int typeMask, final float progressThreshold)
+    {
+        this.ignored = ignored;
+        this.typeMask = typeMask;
+        this.progressThreshold = progressThreshold;
+    }
+
+    /**
+     * @param runeword Runeword to filter or restore.
+     * @return Overlay with the runeword filtered if it was not, or restored if it was.
+     */
+    public FilterOverlay toggle(final Runeword runeword)
+    {
+        final int id = requireNonNull(runeword).getId();
+        if (id < 0 || id > MAX_ID) throw new IllegalArgumentException("Runeword id is out of range: " + id);
+        final long[] copy = Arrays.copyOf(ignored, Math.max(ignored.length, id / Long.SIZE + 1));
+        copy[id / Long.SIZE] ^= 1L << id;
+        return new FilterOverlay(copy, typeMask, progressThreshold);
+    }
+
+    /**
+     * @param type Concrete item type to filter or restore.
+     * @return Overlay with the item type filtered if it was not, or restored if it was.
+     * @see ItemType#isConcrete()
+     */
+    public FilterOverlay toggle(final ItemType type)
+    {
+        if (!requireNonNull(type).isConcrete())
+            throw new IllegalArgumentException("Item type parameter must be concrete.");
+        return new FilterOverlay(ignored, typeMask ^ 1 << type.ordinal(), progressThreshold);
+    }
+
+    /**
+     * @param progressThreshold Progress threshold from [0, 1] for runewords to avoid being filtered.
+     * @return Overlay with the progress threshold.
+     */
+    public FilterOverlay withProgressThreshold(final float progressThreshold)
+    {
+        if (progressThreshold < 0.0f || progressThreshold > 1.0f)
+            throw new IllegalArgumentException("Progress threshold must of the domain [0, 1].");
+        return new FilterOverlay(ignored, typeMask, progressThreshold);
+    }
+
+    /**
+     * @param id Id of a runeword.
+     * @return true if the runeword is filtered.
+     */
+    public boolean isIgnored(final int id)
+    {
+        return id >= 0 && id / Long.SIZE < ignored.length && (ignored[id / Long.SIZE] & 1L << id) != 0;
+    }
+
+    /**
+     * @param type Item type.
+     * @return true if the item type is filtered.
+     */
+    public boolean isFiltered(final ItemType type)
+    {
+        return (typeMask & 1 << requireNonNull(type).ordinal()) != 0;
+    }
+
+    /**
+     * @return Bitmask of filtered item type ordinals.
+     */
+    public int getTypeMask()
+    {
+        return typeMask;
+    }
+
+    /**
+     * @return Progress threshold from [0, 1] for runewords to avoid being filtered.
+     */
+    public float getProgressThreshold()
+    {
+        return progressThreshold;
+    }
+
+    /**
+     * Writes the overlay in the binary format of a RunewordFilter.
+     *
+     * @param out Output to write to.
+     * @throws IOException If the output could not be written to.
+     * @see RunewordFilter#writeState(DataOutput)
+     */
+    public void write(final DataOutput out) throws IOException
+    {
+        out.writeFloat(progressThreshold);
+        out.writeInt(typeMask);
+        int count = 0;
+        for (final long word : ignored)
+            count += Long.bitCount(word);
+        out.writeShort(count);
+        for (int i = 0; i < ignored.length; i++)
+            for (long word = ignored[i]; word != 0; word &= word - 1)
+                out.writeShort(i * Long.SIZE + Long.numberOfTrailingZeros(word));
+    }
+
+    /**
+     * Reads an overlay from the binary format of a RunewordFilter, so saved filters load as overlays.
+     *
+     * @param in Input to read from.
+     * @return Overlay of the saved preferences.
+     * @throws IOException If the input could not be read or is malformed.
+     * @see RunewordFilter#readState(DataInput, int)
+     */
+    public static FilterOverlay read(final DataInput in) throws IOException
+    {
+        final float threshold = in.readFloat();
+        if (!(threshold >= 0.0f && threshold <= 1.0f))
+            throw new InvalidObjectException("Runeword filter save data is malformed.");
+        final int types = in.readInt();
+        long[] ignored = new long[0];
+        for (int i = in.readUnsignedShort(); i > 0; i--)
+        {
+            final int id = in.readUnsignedShort();
+            if (id / Long.SIZE >= ignored.length) ignored = Arrays.copyOf(ignored, id / Long.SIZE + 1);
+            ignored[id / Long.SIZE] |= 1L << id;
+        }
+        return new FilterOverlay(ignored, types, threshold);
+    }
+
+    @Override public boolean equals(final Object o)
+    {
+        if (this == o) return true;
+        if (!(o instanceof FilterOverlay)) return false;
+        final FilterOverlay other = (FilterOverlay)o;
+        if (typeMask != other.typeMask || Float.compare(progressThreshold, other.progressThreshold) != 0)
+            return false;
+        /* Trailing zero words do not distinguish overlays. */
+        final int n = Math.max(ignored.length, other.ignored.length);
+        for (int i = 0; i < n; i++)
+            if ((i < ignored.length ? ignored[i] : 0) != (i < other.ignored.length ? other.ignored[i] : 0))
+                return false;
+        return true;
+    }
+
+    @Override public int hashCode()
+    {
+        int length = ignored.length;
+        while (length > 0 && ignored[length - 1] == 0) length--;
+        return 31 * (31 * Arrays.hashCode(Arrays.copyOf(ignored, length)) + typeMask)
+                + Float.floatToIntBits(progressThreshold);
+    }
+}
@@ -39,6 +39,8 @@ import static java.util.Objects.requireNonNull;
  */
 public class Runeword implements ReadOnlyRuneMap
 {
+    /* Unique identifier, stable across releases. */
+    private final int id;
     private final String name;
     /* Correct rune order. */
     private final String word;
@@ -53,11 +55,21 @@ public class Runeword implements ReadOnlyRuneMap
     /* Runes and their quantities. */
     private final ReadOnlyRuneMap runes;
 
-    public Runeword(final String name, final int level, final String description,
+    /**
+     * @param id Unique identifier of the Runeword, which must never change between releases.
+     * @param name Name of the Runeword.
+     * @param level Required character level.
+     * @param description Description of the affixes.
+     * @param types Types of items which the Runeword can be placed in.
+     * @param runes Runes of the Runeword, in order.
+     */
+    public Runeword(final int id, final String name, final int level, final String description,
                     final Stream<ItemType> types, final Stream<Rune> runes)
     {
+        if (id < 0) throw new IllegalArgumentException("Runeword id must be non-negative");
         if (level <= 0 || level > 99)
             throw new IllegalArgumentException("Runeword level must be within bounds [1, 99]");
+        this.id = id;
         this.name = requireNonNull(name);
         this.level = level;
         this.description = requireNonNull(description);
@@ -86,6 +98,15 @@ public class Runeword implements ReadOnlyRuneMap
         return runes.getRunes();
     }
 
+    /**
+     * @param rune Rune to count.
+     * @return Quantity of the rune in the Runeword, or 0 if absent.
+     */
+    @Override public int count(final Rune rune)
+    {
+        return runes.count(rune);
+    }
+
     /**
      * Appraises the rarity of a rune map.
      * <p>
@@ -99,6 +120,16 @@ public class Runeword implements ReadOnlyRuneMap
         return runes.appraise();
     }
 
+    /**
+     * Identifiers are used to refer to Runewords in save files.
+     *
+     * @return Unique identifier of the Runeword.
+     */
+    public int getId()
+    {
+        return id;
+    }
+
     /**
      * @return Name of the Runeword.
      */
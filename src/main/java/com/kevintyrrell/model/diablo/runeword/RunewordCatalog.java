@@ -0,0 +1,215 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.model.diablo.runeword;
+
+import com.kevintyrrell.model.diablo.ItemType;
+import com.kevintyrrell.model.diablo.rune.ReadOnlyRuneMap;
+import com.kevintyrrell.model.diablo.rune.Rune;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines an immutable catalog of runewords, indexed by id, which any number of users may share.
+ *
+ * Users carry only a FilterOverlay of their preferences. The catalog evaluates overlays
+ * against indexes it computes once: the item types of each runeword as a bitmask, and the
+ * progress of a rune map towards every runeword as a vector, which many overlays may reuse.
+ *
+ * @since 3.0
+ */
+public final class RunewordCatalog
+{
+    /* Runewords by id; null where no runeword has the id. */
+    private final Runeword[] byId;
+    /* Bitmask of the item type ordinals of each runeword, by id. */
+    private final int[] typeMasks;
+    /* Ids of the runewords which contain each rune, by rune ordinal. */
+    private final int[][] idsByRune;
+    private final List<Runeword> runewords;
+
+    /**
+     * @param runewords Runewords of the catalog, whose ids must be distinct and within [0, 65535].
+     */
+    public RunewordCatalog(final Collection<Runeword> runewords)
+    {
+        assert ItemType.extension.size() <= Integer.SIZE;
+        int size = 0;
+        for (final Runeword rw : requireNonNull(runewords))
+        {
+            if (rw.getId() < 0 || rw.getId() > FilterOverlay.MAX_ID)
+                throw new IllegalArgumentException("Runeword id is out of range: " + rw.getId());
+            size = Math.max(size, rw.getId() + 1);
+        }
+        byId = new Runeword[size];
+        typeMasks = new int[size];
+        for (final Runeword rw : runewords)
+        {
+            final int id = rw.getId();
+            if (byId[id] != null) throw new IllegalArgumentException("Runeword id is not distinct: " + id);
+            byId[id] = rw;
+            for (final ItemType type : rw.getTypes())
+                typeMasks[id] |= 1 << type.ordinal();
+        }
+        final List<Runeword> list = new ArrayList<>(runewords.size());
+        for (final Runeword rw : byId)
+            if (rw != null) list.add(rw);
+        this.runewords = Collections.unmodifiableList(list);
+        idsByRune = new int[Rune.extension.size()][];
+        for (final Rune rune : Rune.extension.values())
+            idsByRune[rune.ordinal()] = list.stream()
+                    .filter(rw -> rw.count(rune) > 0)
+                    .mapToInt(Runeword::getId)
+                    .toArray();
+    }
+
+    /**
+     * @return Catalog of every known runeword, loaded once and shared JVM-wide.
+     */
+    public static RunewordCatalog shared()
+    {
+        return Shared.INSTANCE;
+    }
+
+    /* Lazily loads the shared catalog upon first use. */
+    private static final class Shared
+    {
+        private static final RunewordCatalog INSTANCE = new RunewordCatalog(new RunewordLoader().stringMap().values());
+    }
+
+    /**
+     * @param id Id of the runeword.
+     * @return Runeword with the id, or null if absent.
+     */
+    public Runeword get(final int id)
+    {
+        return id >= 0 && id < byId.length ? byId[id] : null;
+    }
+
+    /**
+     * @return Immutable list of the runewords, in order of id.
+     */
+    public List<Runeword> getRunewords()
+    {
+        return runewords;
+    }
+
+    /**
+     * @return One greater than the greatest id of the catalog; the length of vectors indexed by id.
+     */
+    public int capacity()
+    {
+        return byId.length;
+    }
+
+    /**
+     * Computes the progress of a rune map towards every runeword, as of one snapshot.
+     *
+     * The vector may be reused to evaluate any number of overlays against the same runes.
+     *
+     * @param runes Runes in which a player owns.
+     * @return Progress towards each runeword, from [0, 1], indexed by id; 0 where no runeword has the id.
+     */
+    public double[] progress(final ReadOnlyRuneMap runes)
+    {
+        final ReadOnlyRuneMap snapshot = requireNonNull(runes).snapshot();
+        final double[] progress = new double[byId.length];
+        for (int id = 0; id < byId.length; id++)
+            if (byId[id] != null) progress[id] = snapshot.progressTowards(byId[id]);
+        return progress;
+    }
+
+    /**
+     * Updates a progress vector after the quantities of some runes changed,
+     * recomputing only the runewords which contain a changed rune.
+     *
+     * @param base Progress vector of the runes before the change, which is not modified.
+     * @param runes Runes after the change.
+     * @param changed Runes whose quantities changed.
+     * @return Progress towards each runeword, from [0, 1], indexed by id.
+     * @see RunewordCatalog#progress(ReadOnlyRuneMap)
+     */
+    public double[] progress(final double[] base, final ReadOnlyRuneMap runes, final Set<Rune> changed)
+    {
+        if (requireNonNull(base).length != byId.length)
+            throw new IllegalArgumentException("Progress vector must have one entry per id.");
+        final ReadOnlyRuneMap snapshot = requireNonNull(runes).snapshot();
+        final double[] progress = base.clone();
+        for (final Rune rune : requireNonNull(changed))
+            for (final int id : idsByRune[rune.ordinal()])
+                progress[id] = snapshot.progressTowards(byId[id]);
+        return progress;
+    }
+
+    /**
+     * Evaluates an overlay, as does RunewordFilter#stream() with the equivalent preferences.
+     *
+     * @param overlay Filter preferences of a player.
+     * @param progress Progress vector of the player's runes.
+     * @return Bitset of the ids of runewords which pass the overlay.
+     * @see RunewordCatalog#progress(ReadOnlyRuneMap)
+     */
+    public long[] select(final FilterOverlay overlay, final double[] progress)
+    {
+        if (requireNonNull(progress).length != byId.length)
+            throw new IllegalArgumentException("Progress vector must have one entry per id.");
+        final int filteredTypes = overlay.getTypeMask();
+        final float threshold = overlay.getProgressThreshold();
+        final long[] selected = new long[(byId.length + Long.SIZE - 1) / Long.SIZE];
+        for (int id = 0; id < byId.length; id++)
+        {
+            if (byId[id] == null || overlay.isIgnored(id) || progress[id] < threshold) continue;
+            /* Filtered if every item type of the runeword is filtered. */
+            if ((typeMasks[id] & ~filteredTypes) == 0) continue;
+            selected[id / Long.SIZE] |= 1L << id;
+        }
+        return selected;
+    }
+
+    /**
+     * Streams the runewords which pass an overlay, in order of id.
+     *
+     * @param overlay Filter preferences of a player.
+     * @param runes Runes in which the player owns.
+     * @return Stream of runewords after filtration.
+     */
+    public Stream<Runeword> stream(final FilterOverlay overlay, final ReadOnlyRuneMap runes)
+    {
+        return stream(select(overlay, progress(runes)));
+    }
+
+    /**
+     * @param selected Bitset of runeword ids, as from `select`.
+     * @return Stream of the selected runewords, in order of id.
+     */
+    public Stream<Runeword> stream(final long[] selected)
+    {
+        requireNonNull(selected);
+        return IntStream.range(0, Math.min(byId.length, selected.length * Long.SIZE))
+                .filter(id -> (selected[id / Long.SIZE] & 1L << id) != 0)
+                .mapToObj(id -> byId[id]);
+    }
+}
@@ -19,12 +19,21 @@
 package com.kevintyrrell.model.diablo.runeword;
 
 import com.kevintyrrell.model.diablo.ItemType;
+import com.kevintyrrell.model.diablo.rune.CubePlanner;
 import com.kevintyrrell.model.diablo.rune.ReadOnlyRuneMap;
 import com.kevintyrrell.model.util.Saveable;
 import com.kevintyrrell.model.util.Streamable;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToDoubleFunction;
 import java.util.stream.Stream;
 
 import static java.util.Objects.requireNonNull;
@@ -33,23 +42,34 @@ import static java.util.Objects.requireNonNull;
  * Defines a storage unit for Runewords which offers
  * the capability to filter subsets of Runewords.
  *
+ * Preferences are held as an immutable value, which each change replaces atomically.
+ * A stream binds to the preferences and runes current when it begins, so a change made
+ * mid-iteration never alters its results, and any number of streams read without locks.
+ *
  * @since 3.0
  */
 public final class RunewordFilter implements Streamable<Runeword>, Saveable
 {
+    /* Pinned to the value computed for legacy saves, which were written without one. */
+    private static final long serialVersionUID = -7189914555235479959L;
+    /* Serialized form, unchanged from legacy saves which held mutable preferences. */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("runewords", Collection.class),
+            new ObjectStreamField("runes", ReadOnlyRuneMap.class),
+            new ObjectStreamField("filteredTypes", Set.class),
+            new ObjectStreamField("filteredWords", Set.class),
+            new ObjectStreamField("progressThreshold", float.class)
+    };
     /* Reference to container of runewords. */
     private final Collection<Runeword> runewords;
-    /* Item types in which the user wishes to ignore. */
-    private final Set<ItemType> filteredTypes = EnumSet.noneOf(ItemType.class), filteredTypesRO;
-    /* Runewords in which the user wishes to ignore. */
-    private final Set<Runeword> filteredWords = new HashSet<>(), filteredWordsRO;
     /* Runes in which the player owns. */
     private final ReadOnlyRuneMap runes;
+    /* Current preferences, replaced as a whole on every change. */
+    private transient volatile Preferences preferences = Preferences.DEFAULT;
+    /* Filter re-constructed from the legacy serialized form, resolved in place of this one. */
+    private transient RunewordFilter resolved;
 
-    /* Minimum completion for runewords to avoid being filtered. */
-    private float progressThreshold = DEFAULT_COMPLETION_THRESHOLD;
-
-    private static final float DEFAULT_COMPLETION_THRESHOLD = 0.15f;
+    static final float DEFAULT_COMPLETION_THRESHOLD = 0.15f;
 
     /**
      * @param runewords Collection of all known runewords.
@@ -58,8 +78,6 @@ public final class RunewordFilter implements Streamable<Runeword>, Saveable
     {
         this.runewords = requireNonNull(runewords);
         this.runes = requireNonNull(runes);
-        filteredTypesRO = Collections.unmodifiableSet(filteredTypes);
-        filteredWordsRO = Collections.unmodifiableSet(filteredWords);
     }
 
     /**
@@ -72,11 +90,15 @@ public final class RunewordFilter implements Streamable<Runeword>, Saveable
      * @return true if the item type is filtered, false if restored.
      * @see ItemType#isConcrete()
      */
-    public boolean filter(final ItemType type)
+    public synchronized boolean filter(final ItemType type)
     {
         if (!requireNonNull(type).isConcrete())
             throw new IllegalArgumentException("Item type parameter must be concrete.");
-        return filter(filteredTypes, type);
+        final Preferences p = preferences;
+        final EnumSet<ItemType> types = EnumSet.copyOf(p.types);
+        final boolean rval = toggle(types, type);
+        publish(new Preferences(types, p.words, p.threshold, p.upgrades));
+        return rval;
     }
 
     /**
@@ -87,22 +109,31 @@ public final class RunewordFilter implements Streamable<Runeword>, Saveable
      * @param runeword Runeword to filter or restore.
      * @return true if the item type is filtered, false if restored.
      */
-    public boolean filter(final Runeword runeword)
+    public synchronized boolean filter(final Runeword runeword)
     {
-        return filter(filteredWords, runeword);
+        final Preferences p = preferences;
+        final Set<Runeword> words = new HashSet<>(p.words);
+        final boolean rval = toggle(words, runeword);
+        publish(new Preferences(p.types, words, p.threshold, p.upgrades));
+        return rval;
     }
 
     /* Helper method to avoid repeated code. */
-    private <T> boolean filter(final Set<T> container, final T value)
+    private static <T> boolean toggle(final Set<T> container, final T value)
     {
-        final boolean rval;
-        if (container.contains(requireNonNull(value)))
-            rval = container.remove(value);
-        else rval = container.add(value);
-        flagUnsavedChanges();
+        /* Restores the value if it was already filtered. */
+        final boolean rval = container.add(requireNonNull(value));
+        if (!rval) container.remove(value);
         return rval;
     }
 
+    /* Publishes the preferences as the current ones; callers must hold the monitor. */
+    private void publish(final Preferences preferences)
+    {
+        this.preferences = preferences;
+        flagUnsavedChanges();
+    }
+
     /**
      * Streams and filters over all Runewords.
      * Runewords can be filtered out by the following:
@@ -110,30 +141,37 @@ public final class RunewordFilter implements Streamable<Runeword>, Saveable
      *  * Progress: progress towards the runeword is insufficient.
      *  * Type: no remaining filtered item types.
      *
+     * The stream binds to the preferences and a snapshot of the runes as of this call.
+     *
      * @return Stream of Runewords after filtration.
+     * @see ReadOnlyRuneMap#snapshot()
      */
     @Override public Stream<Runeword> stream()
     {
+        final Preferences p = preferences;
+        final ReadOnlyRuneMap snapshot = runes.snapshot();
+        final ToDoubleFunction<Runeword> progress = p.upgrades
+                ? new CubePlanner(snapshot)::effectiveProgress : snapshot::progressTowards;
         return runewords.stream()
-                .filter(rw -> !filteredWords.contains(rw))
-                .filter(rw -> runes.progressTowards(rw) >= progressThreshold)
-                .filter(rw -> !filteredTypes.containsAll(rw.getTypes()));
+                .filter(rw -> !p.words.contains(rw))
+                .filter(rw -> progress.applyAsDouble(rw) >= p.threshold)
+                .filter(rw -> !p.types.containsAll(rw.getTypes()));
     }
 
     /**
-     * @return Read-only set of item types being filtered.
+     * @return Immutable set of item types being filtered, as of this call.
      */
     public Set<ItemType> getFilteredTypes()
     {
-        return filteredTypesRO;
+        return preferences.typesRO;
     }
 
     /**
-     * @return Read-only set of runewords being filtered.
+     * @return Immutable set of runewords being filtered, as of this call.
      */
     public Set<Runeword> getFilteredWords()
     {
-        return filteredWordsRO;
+        return preferences.wordsRO;
     }
 
     /**
@@ -141,17 +179,173 @@ public final class RunewordFilter implements Streamable<Runeword>, Saveable
      */
     public float getProgressThreshold()
     {
-        return progressThreshold;
+        return preferences.threshold;
     }
 
     /**
      * @param progressThreshold Progress threshold from [0, 1] for runewords to avoid being filtered.
      */
-    public void setProgressThreshold(final float progressThreshold)
+    public synchronized void setProgressThreshold(final float progressThreshold)
     {
         if (progressThreshold < 0.0f || progressThreshold > 1.0f)
             throw new IllegalArgumentException("Progress threshold must of the domain [0, 1].");
-        this.progressThreshold = progressThreshold;
+        final Preferences p = preferences;
+        publish(new Preferences(p.types, p.words, progressThreshold, p.upgrades));
+    }
+
+    /**
+     * @return true if progress counts runes which cube upgrades could make.
+     */
+    public boolean isCountingUpgrades()
+    {
+        return preferences.upgrades;
+    }
+
+    /**
+     * Sets whether progress counts runes which cube upgrades could make, rather than only those held.
+     *
+     * This mode is not saved, as it does not alter the binary format.
+     *
+     * @param countUpgrades true to filter by effective progress.
+     * @see CubePlanner#effectiveProgress(ReadOnlyRuneMap)
+     */
+    public synchronized void setCountingUpgrades(final boolean countUpgrades)
+    {
+        final Preferences p = preferences;
+        preferences = new Preferences(p.types, p.words, p.threshold, countUpgrades);
+    }
+
+    /**
+     * Writes the filter preferences in their binary format.
+     *
+     * Only preferences are written; the runewords and runes are provided upon construction.
+     * Format: [float] threshold, [int] bitmask of item type ordinals,
+     * [short] number of runewords, then per runeword: [short] id.
+     *
+     * @param out Output to write to.
+     * @throws IOException If the output could not be written to.
+     */
+    @Override public void writeState(final DataOutput out) throws IOException
+    {
+        assert ItemType.extension.size() <= Integer.SIZE;
+        final Preferences p = preferences;
+        out.writeFloat(p.threshold);
+        int types = 0;
+        for (final ItemType type : p.types)
+            types |= 1 << type.ordinal();
+        out.writeInt(types);
+        out.writeShort(p.words.size());
+        for (final Runeword rw : p.words)
+            out.writeShort(rw.getId());
+    }
+
+    /**
+     * Replaces the filter preferences with those of their binary format.
+     *
+     * Runeword ids which are not present in the runeword collection are ignored.
+     *
+     * @param in Input to read from.
+     * @param version Version of the binary format which was written.
+     * @throws IOException If the input could not be read or is malformed.
+     */
+    @Override public void readState(final DataInput in, final int version) throws IOException
+    {
+        final float threshold = in.readFloat();
+        if (!(threshold >= 0.0f && threshold <= 1.0f))
+            throw new InvalidObjectException("Runeword filter save data is malformed.");
+        final int types = in.readInt();
+        final Map<Integer, Runeword> ids = new HashMap<>();
+        runewords.forEach(rw -> ids.put(rw.getId(), rw));
+        final Set<Runeword> words = new HashSet<>();
+        for (int i = in.readUnsignedShort(); i > 0; i--)
+        {
+            final Runeword rw = ids.get(in.readUnsignedShort());
+            if (rw != null) words.add(rw);
+        }
+
+        final EnumSet<ItemType> filteredTypes = EnumSet.noneOf(ItemType.class);
+        ItemType.extension.values().stream()
+                .filter(type -> (types & 1 << type.ordinal()) != 0)
+                .forEach(filteredTypes::add);
+        synchronized (this)
+        {
+            preferences = new Preferences(filteredTypes, words, threshold, preferences.upgrades);
+        }
+    }
+
+    /* Writes the filter in the legacy serialized form. */
+    private void writeObject(final ObjectOutputStream out) throws IOException
+    {
+        final Preferences p = preferences;
+        final ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("runewords", runewords);
+        fields.put("runes", runes);
+        fields.put("filteredTypes", EnumSet.copyOf(p.types));
+        fields.put("filteredWords", new HashSet<>(p.words));
+        fields.put("progressThreshold", p.threshold);
+        out.writeFields();
+    }
+
+    /* Reads the filter from the legacy serialized form. */
+    @SuppressWarnings("unchecked")
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        final ObjectInputStream.GetField fields = in.readFields();
+        final Object runewords = fields.get("runewords", null), runes = fields.get("runes", null),
+                types = fields.get("filteredTypes", null), words = fields.get("filteredWords", null);
+        final float threshold = fields.get("progressThreshold", DEFAULT_COMPLETION_THRESHOLD);
+        if (!(runewords instanceof Collection) || !(runes instanceof ReadOnlyRuneMap)
+                || !(types instanceof Set) || !(words instanceof Set) || !(threshold >= 0.0f && threshold <= 1.0f))
+            throw new InvalidObjectException("Runeword filter save data is malformed.");
+
+        final EnumSet<ItemType> filteredTypes = EnumSet.noneOf(ItemType.class);
+        for (final Object type : (Set<?>)types)
+        {
+            if (!(type instanceof ItemType)) throw new InvalidObjectException("Runeword filter save data is malformed.");
+            filteredTypes.add((ItemType)type);
+        }
+        final Set<Runeword> filteredWords = new HashSet<>();
+        for (final Object word : (Set<?>)words)
+        {
+            if (!(word instanceof Runeword)) throw new InvalidObjectException("Runeword filter save data is malformed.");
+            filteredWords.add((Runeword)word);
+        }
+        resolved = new RunewordFilter((Collection<Runeword>)runewords, (ReadOnlyRuneMap)runes);
+        resolved.preferences = new Preferences(filteredTypes, filteredWords, threshold, false);
+    }
+
+    /* Legacy serialized filters lack their transient preferences, so re-construct them. */
+    private Object readResolve()
+    {
+        return resolved;
+    }
+
+    /* Immutable filter preferences; never modify the sets after construction. */
+    private static final class Preferences
+    {
+        private static final Preferences DEFAULT = new Preferences(
+                EnumSet.noneOf(ItemType.class), Collections.emptySet(), DEFAULT_COMPLETION_THRESHOLD, false);
+
+        /* Item types in which the user wishes to ignore. */
+        private final EnumSet<ItemType> types;
+        private final Set<ItemType> typesRO;
+        /* Runewords in which the user wishes to ignore. */
+        private final Set<Runeword> words, wordsRO;
+        /* Minimum completion for runewords to avoid being filtered. */
+        private final float threshold;
+        /* Whether completion counts runes which cube upgrades could make. */
+        private final boolean upgrades;
+
+        private Preferences(final EnumSet<ItemType> types, final Set<Runeword> words, final float threshold,
+                            final boolean upgrades)
+        {
+            this.types = types;
+            this.words = words;
+            this.threshold = threshold;
+            this.upgrades = upgrades;
+            typesRO = Collections.unmodifiableSet(types);
+            wordsRO = Collections.unmodifiableSet(words);
+        }
     }
 
     private final AtomicBoolean unsavedChanges = new AtomicBoolean();
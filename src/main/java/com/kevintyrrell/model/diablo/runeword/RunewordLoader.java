@@ -52,7 +52,7 @@ public class RunewordLoader implements Queryable<Runeword>
         stringMap = Queryable.createStringMap(
                 /* IntStream is required here to avoid generic casting in a Stream#map call */
                 IntStream.range(0, jo.size())
-                        .mapToObj(i -> loadRuneword((JSONObject)jo.get(i))), rw ->
+                        .mapToObj(i -> loadRuneword(i, (JSONObject)jo.get(i))), rw ->
                 {
                     final String rwlc = rw.getName().toLowerCase();
                     /* Remove symbols and spaces. Replace spaces with underscores. */
@@ -60,9 +60,9 @@ public class RunewordLoader implements Queryable<Runeword>
                 });
     }
 
-    /* Loads a Runeword from its JSON string */
+    /* Loads a Runeword from its JSON string. Position in the JSON array serves as the id. */
     @SuppressWarnings("unchecked")
-    private static Runeword loadRuneword(final JSONObject jsonRW)
+    private static Runeword loadRuneword(final int id, final JSONObject jsonRW)
     {
         assert jsonRW != null;
         final String name = (String)jsonRW.get("name");
@@ -80,7 +80,7 @@ public class RunewordLoader implements Queryable<Runeword>
         final Stream<Rune> runes = ((Stream<Object>)jsonRuneArray.stream())
                 .map(obj -> Rune.extension.fromOrdinal(toIntExact((Long)obj)));
         final String description = (String)jsonRW.get("description");
-        return new Runeword(name, level, description, types, runes);
+        return new Runeword(id, name, level, description, types, runes);
     }
 
     /**
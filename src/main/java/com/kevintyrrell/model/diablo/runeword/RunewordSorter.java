@@ -18,12 +18,14 @@
 
 package com.kevintyrrell.model.diablo.runeword;
 
+import com.kevintyrrell.model.diablo.rune.CubePlanner;
 import com.kevintyrrell.model.diablo.rune.ReadOnlyRuneMap;
 import com.kevintyrrell.model.util.EnumExtendable;
 import com.kevintyrrell.model.util.Streamable;
 
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -36,31 +38,40 @@ import static java.util.Objects.requireNonNull;
  */
 public class RunewordSorter implements Streamable<Runeword>
 {
-    /* Default sorting method. */
-    private Sort currentSort = Sort.BY_RARITY;
+    /* Default sorting method; volatile, as settings are changed by threads other than those which sort. */
+    private volatile Sort currentSort = Sort.BY_RARITY;
+    /* Whether sorting by progress counts runes which cube upgrades could make. */
+    private volatile boolean countUpgrades;
 
-    /* Associates each sort with its respective comparator. */
+    /* Associates each sort, other than by progress, with its respective comparator. */
     private final Map<Sort, Comparator<Runeword>> comparatorMap;
+    private final ReadOnlyRuneMap userRunes;
 
     /**
      * @param userRunes Runes in which the player owns.
      */
     public RunewordSorter(final ReadOnlyRuneMap userRunes)
     {
-        requireNonNull(userRunes);
+        this.userRunes = requireNonNull(userRunes);
         comparatorMap = Sort.extension.values().stream()
                 .collect(Collectors.toMap(
                         Function.identity(), v -> v::cmp,
                         (rw1, rw2) -> { throw new RuntimeException(); },
                         () -> new EnumMap<>(Sort.class)));
-        comparatorMap.put(Sort.BY_PROGRESS, (rw1, rw2) ->
+        comparatorMap.remove(Sort.BY_PROGRESS);
+    }
+
+    /* Compares progress against a single snapshot, so that every comparison of a sort agrees. */
+    private static Comparator<Runeword> progressComparator(final ToDoubleFunction<Runeword> progress)
+    {
+        return (rw1, rw2) ->
         {
             /* This is semi-cached, as each rune map caches its appraisal. */
-            final int cmp = Double.compare(userRunes.progressTowards(rw1), userRunes.progressTowards(rw2));
+            final int cmp = Double.compare(progress.applyAsDouble(rw1), progress.applyAsDouble(rw2));
             /* Dive one layer deeper if comparison is equivalent. */
             if (cmp != 0 || Sort.BY_PROGRESS.nextLayer == null) return cmp;
             return Sort.BY_PROGRESS.nextLayer.cmp(rw1, rw2);
-        });
+        };
     }
 
     /**
@@ -75,13 +86,41 @@ public class RunewordSorter implements Streamable<Runeword>
     /**
      * Sorts a subset of runewords by the current sort setting.
      *
+     * Sorting by progress binds to the snapshot of the runes current when this method is called.
+     *
      * @param stream Stream of runewords to sort.
      * @return Stream of sorted runewords.
      * @see Stream#flatMap(Function)
      */
     @Override public Stream<Runeword> flatMap(final Stream<Runeword> stream)
     {
-        return requireNonNull(stream).sorted(comparatorMap.get(currentSort));
+        requireNonNull(stream);
+        /* Read the setting once, so that a concurrent change cannot split this sort across two. */
+        final Sort sort = currentSort;
+        if (sort != Sort.BY_PROGRESS) return stream.sorted(comparatorMap.get(sort));
+        final ReadOnlyRuneMap snapshot = userRunes.snapshot();
+        return stream.sorted(progressComparator(countUpgrades
+                /* The planner memoizes each runeword, so each is planned once per sort. */
+                ? new CubePlanner(snapshot)::effectiveProgress : snapshot::progressTowards));
+    }
+
+    /**
+     * Sets whether sorting by progress counts runes which cube upgrades could make, rather than only those held.
+     *
+     * @param countUpgrades true to sort by effective progress.
+     * @see CubePlanner#effectiveProgress(ReadOnlyRuneMap)
+     */
+    public void setCountingUpgrades(final boolean countUpgrades)
+    {
+        this.countUpgrades = countUpgrades;
+    }
+
+    /**
+     * @return true if sorting by progress counts runes which cube upgrades could make.
+     */
+    public boolean isCountingUpgrades()
+    {
+        return countUpgrades;
     }
 
     /**
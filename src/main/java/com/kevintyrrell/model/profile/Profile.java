@@ -0,0 +1,122 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.model.profile;
+
+import com.kevintyrrell.model.diablo.rune.RuneMap;
+import com.kevintyrrell.model.diablo.runeword.Runeword;
+import com.kevintyrrell.model.diablo.runeword.RunewordFilter;
+import com.kevintyrrell.model.util.SaveGroup;
+
+import java.util.Collection;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines the saved state of a single player: their runes and their filter preferences.
+ *
+ * All files of a profile reside in its own directory and are saved as one SaveGroup.
+ *
+ * @since 3.0
+ */
+public final class Profile
+{
+    /* Filenames within the profile directory. */
+    private static final String RUNES = "runes", FILTER = "filter", MANIFEST = "commit";
+
+    private final String id;
+    /* Directory of the profile, relative to the save directory, ending in a separator. */
+    private final String directory;
+    private final RuneMap runes = new RuneMap();
+    private final RunewordFilter filter;
+
+    /**
+     * @param id Identifier of the player.
+     * @param directory Directory of the profile, relative to the save directory.
+     * @param runewords Collection of all known runewords.
+     */
+    Profile(final String id, final String directory, final Collection<Runeword> runewords)
+    {
+        this.id = requireNonNull(id);
+        this.directory = requireNonNull(directory);
+        filter = new RunewordFilter(requireNonNull(runewords), runes);
+    }
+
+    /**
+     * Restores the profile from the storage medium, if it was previously saved.
+     */
+    void restore()
+    {
+        new SaveGroup(directory + MANIFEST); // Completes any interrupted save first.
+        runes.restore(directory + RUNES);
+        filter.restore(directory + FILTER);
+    }
+
+    /**
+     * Atomically saves all unsaved changes of the profile.
+     *
+     * @return true if saving to the storage medium was successful.
+     */
+    public boolean save()
+    {
+        return new SaveGroup(directory + MANIFEST)
+                .add(directory + RUNES, runes)
+                .add(directory + FILTER, filter)
+                .commit();
+    }
+
+    /**
+     * @return true if the profile has changes which have yet to be saved.
+     */
+    public boolean hasUnsavedChanges()
+    {
+        return runes.getUnsavedChanges().get() || filter.getUnsavedChanges().get();
+    }
+
+    /**
+     * @return Identifier of the player.
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return Runes which the player owns.
+     */
+    public RuneMap getRunes()
+    {
+        return runes;
+    }
+
+    /**
+     * @return Filter preferences of the player.
+     */
+    public RunewordFilter getFilter()
+    {
+        return filter;
+    }
+
+    /**
+     * @return String representation of the profile.
+     */
+    @Override public String toString()
+    {
+        return id;
+    }
+}
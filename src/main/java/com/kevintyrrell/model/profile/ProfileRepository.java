@@ -0,0 +1,234 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.model.profile;
+
+import com.kevintyrrell.model.diablo.runeword.Runeword;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a store of player profiles, keyed by player id.
+ *
+ * Profiles are loaded lazily upon first access and kept in a bounded,
+ * least-recently-used cache. Evicted profiles with unsaved changes are
+ * written back before they are dropped. Should a write-back fail, the profile
+ * is held aside rather than dropped: `get` returns it in place of its stale
+ * save, and `saveAll` retries it.
+ *
+ * Profiles are stored in sharded directories to keep directory sizes small:
+ *  [root]/[2 hex digits of the id's hash]/[id]/
+ *
+ * A profile should not be retained by callers across calls to `get`,
+ * as changes made to an evicted profile would not be saved.
+ *
+ * @since 3.0
+ */
+public final class ProfileRepository implements AutoCloseable
+{
+    /**
+     * Default directory of all profiles, relative to the save directory.
+     */
+    public static final String DEFAULT_DIRECTORY = "profiles/";
+
+    /* Player ids are used as directory names, so only allow safe characters. */
+    private static final Pattern ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final String root;
+    private final Collection<Runeword> runewords;
+    /* Resident profiles, in order of least to most recently used. */
+    private final LinkedHashMap<String, Profile> cache;
+    /* Evicted profiles whose unsaved changes failed to be written back. */
+    private final Map<String, Profile> writeBacks = new HashMap<>();
+
+    private long hits, misses, evictions, failedWriteBacks;
+
+    /**
+     * @param runewords Collection of all known runewords, shared by all profiles.
+     * @param capacity Maximum number of resident profiles.
+     */
+    public ProfileRepository(final Collection<Runeword> runewords, final int capacity)
+    {
+        this(DEFAULT_DIRECTORY, runewords, capacity);
+    }
+
+    /**
+     * @param root Directory of all profiles, relative to the save directory.
+     * @param runewords Collection of all known runewords, shared by all profiles.
+     * @param capacity Maximum number of resident profiles.
+     */
+    public ProfileRepository(final String root, final Collection<Runeword> runewords, final int capacity)
+    {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive.");
+        this.root = requireNonNull(root).endsWith("/") ? root : root + '/';
+        this.runewords = requireNonNull(runewords);
+        cache = new LinkedHashMap<>(capacity * 4 / 3 + 1, 0.75f, true)
+        {
+            @Override protected boolean removeEldestEntry(final Map.Entry<String, Profile> eldest)
+            {
+                if (size() <= capacity) return false;
+                evictions++;
+                final Profile profile = eldest.getValue();
+                if (profile.hasUnsavedChanges() && !profile.save())
+                {
+                    failedWriteBacks++;
+                    writeBacks.put(profile.getId(), profile);
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Retrieves the profile of a player, loading it if it is not resident.
+     *
+     * Players without a saved profile are given an empty profile.
+     *
+     * @param id Identifier of the player.
+     * @return Profile of the player.
+     */
+    public synchronized Profile get(final String id)
+    {
+        if (!ID_PATTERN.matcher(requireNonNull(id)).matches())
+            throw new IllegalArgumentException("Player id is invalid: ".concat(id));
+        Profile profile = cache.get(id);
+        if (profile != null)
+        {
+            hits++;
+            return profile;
+        }
+
+        misses++;
+        profile = writeBacks.remove(id); // Newer than its save, which must not be read.
+        if (profile == null)
+        {
+            profile = new Profile(id, directoryOf(id), runewords);
+            profile.restore();
+        }
+        cache.put(id, profile);
+        return profile;
+    }
+
+    /* Directory of the profile, sharded by the hash of the id. */
+    private String directoryOf(final String id)
+    {
+        final int shard = (id.hashCode() ^ id.hashCode() >>> 16) & 0xFF;
+        return String.format("%s%02x/%s/", root, shard, id);
+    }
+
+    /**
+     * Saves all resident profiles which have unsaved changes,
+     * and retries all evicted profiles whose write-back failed.
+     *
+     * @return true if all profiles were saved successfully.
+     */
+    public synchronized boolean saveAll()
+    {
+        boolean success = true;
+        for (final Profile profile : cache.values())
+            if (profile.hasUnsavedChanges())
+                success &= profile.save();
+        for (final Iterator<Profile> it = writeBacks.values().iterator(); it.hasNext(); )
+        {
+            if (it.next().save()) it.remove();
+            else success = false;
+        }
+        return success;
+    }
+
+    /**
+     * Saves all resident profiles, then evicts them.
+     *
+     * @throws IOException If any profile could not be saved. Such profiles are held aside
+     * rather than dropped, so `get` still returns them and `saveAll` retries them.
+     */
+    @Override public synchronized void close() throws IOException
+    {
+        final boolean saved = saveAll();
+        for (final Profile profile : cache.values())
+            if (profile.hasUnsavedChanges())
+                writeBacks.put(profile.getId(), profile);
+        cache.clear();
+        if (!saved) throw new IOException("Profiles could not be saved: " + writeBacks.keySet());
+    }
+
+    /**
+     * @return Number of resident profiles.
+     */
+    public synchronized int size()
+    {
+        return cache.size();
+    }
+
+    /**
+     * @return Number of accesses which found the profile resident.
+     */
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    /**
+     * @return Number of accesses which had to load the profile.
+     */
+    public synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+    /**
+     * @return Ratio of accesses which found the profile resident, from [0, 1].
+     */
+    public synchronized double getHitRate()
+    {
+        final long total = hits + misses;
+        return total == 0 ? 0 : (double)hits / total;
+    }
+
+    /**
+     * @return Number of profiles evicted from the cache.
+     */
+    public synchronized long getEvictionCount()
+    {
+        return evictions;
+    }
+
+    /**
+     * @return Number of evicted profiles held aside, as their unsaved changes failed to be written back.
+     */
+    public synchronized int getPendingWriteBackCount()
+    {
+        return writeBacks.size();
+    }
+
+    /**
+     * @return Number of evicted profiles whose unsaved changes failed to be written back.
+     */
+    public synchronized long getFailedWriteBackCount()
+    {
+        return failedWriteBacks;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.model.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a group of Saveable objects which are saved atomically, all or nothing.
+ *
+ * Committing a group proceeds as follows:
+ *  1. Each file is written to a temporary file, after which all are synced back-to-back.
+ *  2. A manifest listing the files is written and synced, as is its directory. This is the commit point.
+ *  3. Each temporary file is renamed over its save file, and each directory is synced once.
+ *  4. The manifest is deleted.
+ *
+ * A group of N files within one directory therefore costs N + 3 syncs, not one. Each file
+ * must be durable before the manifest which promises it, or recovery could roll forward
+ * a torn file; the manifest's directory must be durable for the commit point to survive
+ * a crash; and the final directory sync makes the renames durable before the manifest goes.
+ * The N file syncs are issued back-to-back, so the storage medium may batch them.
+ *
+ * Should the program crash before step 2 completes, the save files are untouched.
+ * Should it crash afterwards, the next group using the same manifest rolls the
+ * renames forward upon construction. Readers therefore never observe some files
+ * of a group saved and others not, e.g. a rune map saved without its filter.
+ *
+ * Groups are not thread-safe, and groups sharing a manifest must not commit concurrently.
+ *
+ * @since 3.0
+ */
+public final class SaveGroup
+{
+    /**
+     * File extension of the group manifest.
+     */
+    public static final String MANIFEST_EXTENSION = ".manifest";
+
+    /* Suffix of temporary files, appended to the path of the file being replaced. */
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path manifestPath;
+    /* Encoded bytes to be written, keyed by filename. */
+    private final Map<String, byte[]> entries = new LinkedHashMap<>();
+    /* Saveable objects whose unsaved changes are pending in this group. */
+    private final List<Saveable> saveables = new ArrayList<>();
+
+    /**
+     * Constructs a group, completing any group of the same manifest which was interrupted.
+     *
+     * @param manifest Filename of the manifest, excluding extension.
+     */
+    public SaveGroup(final String manifest)
+    {
+        manifestPath = Saveable.pathOf(requireNonNull(manifest), MANIFEST_EXTENSION);
+        try
+        {
+            recover();
+        }
+        catch (final IOException e) { e.printStackTrace(); }
+    }
+
+    /**
+     * Adds a Saveable object to the group under its default filename.
+     *
+     * @param saveable Saveable object to save.
+     * @return This group.
+     * @see SaveGroup#add(String, Saveable)
+     */
+    public SaveGroup add(final Saveable saveable)
+    {
+        return add(requireNonNull(saveable).getFileName(), saveable);
+    }
+
+    /**
+     * Adds a Saveable object to the group.
+     *
+     * If the object has no unsaved changes, no action is taken. Otherwise its state
+     * is encoded immediately and its unsaved changes flag is cleared. Should the
+     * commit fail, the object is flagged as having unsaved changes once more.
+     *
+     * @param filename Filename of the save file, excluding extension.
+     * @param saveable Saveable object to save.
+     * @return This group.
+     */
+    public SaveGroup add(final String filename, final Saveable saveable)
+    {
+        requireNonNull(filename);
+        if (requireNonNull(saveable).getUnsavedChanges().getAndSet(false))
+        {
+            entries.put(filename, saveable.toBytes());
+            saveables.add(saveable);
+        }
+        return this;
+    }
+
+    /**
+     * Adds previously encoded bytes to the group.
+     *
+     * @param filename Filename of the save file, excluding extension.
+     * @param bytes Encoded bytes of a Saveable object.
+     * @return This group.
+     * @see Saveable#toBytes()
+     */
+    public SaveGroup add(final String filename, final byte[] bytes)
+    {
+        entries.put(requireNonNull(filename), requireNonNull(bytes));
+        return this;
+    }
+
+    /**
+     * @return Number of files in the group.
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Atomically writes every file of the group, then empties the group.
+     *
+     * @return true if the group was committed to the storage medium.
+     */
+    public boolean commit()
+    {
+        if (entries.isEmpty()) return true;
+        try
+        {
+            commitImpl();
+            entries.clear();
+            saveables.clear();
+            return true;
+        }
+        catch (final IOException e)
+        {
+            e.printStackTrace();
+            saveables.forEach(Saveable::flagUnsavedChanges);
+            saveables.clear();
+            entries.clear();
+        }
+
+        return false;
+    }
+
+    private void commitImpl() throws IOException
+    {
+        final List<Path> targets = new ArrayList<>(entries.size());
+        final List<FileChannel> channels = new ArrayList<>(entries.size());
+        try
+        {
+            for (final Map.Entry<String, byte[]> e : entries.entrySet())
+            {
+                final Path target = Saveable.pathOf(e.getKey(), Saveable.BINARY_EXTENSION);
+                Files.createDirectories(target.toAbsolutePath().getParent());
+                final FileChannel fc = FileChannel.open(tempOf(target), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                channels.add(fc);
+                targets.add(target);
+                final ByteBuffer bytes = ByteBuffer.wrap(e.getValue());
+                while (bytes.hasRemaining()) fc.write(bytes);
+            }
+            /* Sync only once every file is written, so the storage medium may batch the work. */
+            for (final FileChannel fc : channels)
+                fc.force(false);
+        }
+        finally
+        {
+            for (final FileChannel fc : channels)
+                fc.close();
+        }
+
+        writeManifest(entries.keySet());
+        rollForward(targets);
+    }
+
+    /* Writes and syncs the manifest, committing the group. */
+    private void writeManifest(final Collection<String> filenames) throws IOException
+    {
+        Files.createDirectories(manifestPath.toAbsolutePath().getParent());
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final DataOutputStream out = new DataOutputStream(bytes))
+        {
+            out.writeInt(Saveable.MAGIC);
+            out.writeShort(filenames.size());
+            for (final String filename : filenames)
+                out.writeUTF(filename);
+        }
+        writeAtomically(manifestPath, bytes.toByteArray());
+    }
+
+    /* Renames each temporary file over its target, syncs their directories, then deletes the manifest. */
+    private void rollForward(final Collection<Path> targets) throws IOException
+    {
+        final Set<Path> dirs = new LinkedHashSet<>();
+        for (final Path target : targets)
+        {
+            final Path temp = tempOf(target);
+            if (Files.exists(temp))
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            dirs.add(target.toAbsolutePath().getParent());
+        }
+        dirs.forEach(SaveGroup::syncDirectory);
+        Files.deleteIfExists(manifestPath);
+    }
+
+    /* Completes an interrupted commit whose manifest was written. */
+    private void recover() throws IOException
+    {
+        if (!Files.exists(manifestPath)) return;
+        final List<Path> targets = new ArrayList<>();
+        try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(manifestPath))))
+        {
+            if (in.readInt() != Saveable.MAGIC)
+                throw new StreamCorruptedException("Manifest is not of the manifest format: " + manifestPath);
+            for (int i = in.readUnsignedShort(); i > 0; i--)
+                targets.add(Saveable.pathOf(in.readUTF(), Saveable.BINARY_EXTENSION));
+        }
+        rollForward(targets);
+    }
+
+    /**
+     * Writes a file atomically: to a temporary file, synced, then renamed over the file.
+     *
+     * @param path Path of the file to write.
+     * @param bytes Content of the file.
+     * @throws IOException If the file could not be written.
+     */
+    public static void writeAtomically(final Path path, final byte[] bytes) throws IOException
+    {
+        final Path temp = tempOf(path);
+        try (final FileChannel fc = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) fc.write(buffer);
+            fc.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(path.toAbsolutePath().getParent());
+    }
+
+    /* Path of the temporary file for a specified file. */
+    private static Path tempOf(final Path path)
+    {
+        return path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+    }
+
+    /* Syncs a directory so renames within it are durable. Not all platforms support this. */
+    private static void syncDirectory(final Path dir)
+    {
+        try (final FileChannel fc = FileChannel.open(dir, StandardOpenOption.READ))
+        {
+            fc.force(true);
+        }
+        catch (final IOException ignored) { }
+    }
+}
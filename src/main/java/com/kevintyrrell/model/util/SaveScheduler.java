@@ -0,0 +1,330 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.model.util;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a write-behind scheduler which saves Saveable objects in the background.
+ *
+ * Submitting a Saveable encodes its state in-memory on the caller's thread,
+ * so the caller never waits on the storage medium. Submissions of the same
+ * file are coalesced; only the most recent state is written. Pending states
+ * are flushed on a background thread once the debounce window, measured from
+ * the first pending submission, elapses, as well as upon `flush` or `close`.
+ * Each flush commits all pending files as a single SaveGroup. Should a group fail
+ * to commit, its files are pending once more and a flush is scheduled to retry them.
+ *
+ * Each scheduler commits through a manifest within its directory, and constructing one
+ * completes any flush of that directory which was interrupted. Construct the scheduler,
+ * or call `recover`, before restoring any file which it saves.
+ *
+ * @since 3.0
+ */
+public final class SaveScheduler implements AutoCloseable
+{
+    /* Most recently submitted state of each file, awaiting a flush. */
+    private final Map<String, byte[]> pending = new ConcurrentHashMap<>();
+    /* Background thread on which all writes occur. */
+    private final ScheduledExecutorService executor;
+    /* Maximum delay between a submission and its flush. */
+    private final long debounceNanos;
+    /* Filename of the manifest of each flushed group. */
+    private final String manifest;
+    /* Set while a flush is scheduled but has not yet begun. */
+    private final AtomicBoolean armed = new AtomicBoolean();
+
+    /* Minimum delay before retrying a failed flush, so a persistent failure never spins. */
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong flushes = new AtomicLong(), writes = new AtomicLong(),
+            coalesced = new AtomicLong(), failures = new AtomicLong(), totalLatency = new AtomicLong();
+    private final LongAccumulator maxLatency = new LongAccumulator(Long::max, 0);
+    private volatile long lastLatency;
+
+    /**
+     * Constructs a scheduler whose manifest is within the save directory itself.
+     *
+     * @param debounce Maximum delay between a submission and its flush.
+     * @param unit Unit of the debounce window.
+     */
+    public SaveScheduler(final long debounce, final TimeUnit unit)
+    {
+        this("", debounce, unit);
+    }
+
+    /**
+     * Constructs a scheduler, completing any interrupted flush of the same directory.
+     *
+     * Only one scheduler per directory may be open at a time.
+     *
+     * @param directory Directory, relative to the save directory, of the manifest; empty or ending in '/'.
+     * @param debounce Maximum delay between a submission and its flush.
+     * @param unit Unit of the debounce window.
+     * @see SaveScheduler#recover(String)
+     */
+    public SaveScheduler(final String directory, final long debounce, final TimeUnit unit)
+    {
+        if (debounce < 0) throw new IllegalArgumentException("Debounce window must be non-negative.");
+        manifest = manifestOf(directory);
+        new SaveGroup(manifest); // Completes any interrupted flush.
+        debounceNanos = requireNonNull(unit).toNanos(debounce);
+        executor = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            final Thread t = new Thread(r, SaveScheduler.class.getSimpleName());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Completes any interrupted flush of a scheduler of the specified directory,
+     * without constructing a scheduler.
+     *
+     * @param directory Directory, relative to the save directory, of the manifest; empty or ending in '/'.
+     * @see SaveScheduler#SaveScheduler(String, long, TimeUnit)
+     */
+    public static void recover(final String directory)
+    {
+        new SaveGroup(manifestOf(directory));
+    }
+
+    /* Filename of the manifest of the schedulers of a directory. */
+    private static String manifestOf(final String directory)
+    {
+        if (!requireNonNull(directory).isEmpty() && !directory.endsWith("/"))
+            throw new IllegalArgumentException("Directory must be empty or end in '/': " + directory);
+        return directory + SaveScheduler.class.getSimpleName();
+    }
+
+    /**
+     * Schedules a Saveable object to be saved under its default filename.
+     *
+     * @param saveable Saveable object to save.
+     * @see Saveable#getFileName()
+     */
+    public void submit(final Saveable saveable)
+    {
+        submit(requireNonNull(saveable).getFileName(), saveable);
+    }
+
+    /**
+     * Schedules a Saveable object to be saved.
+     *
+     * If the object has no unsaved changes, no action is taken.
+     * Otherwise its state is encoded immediately and its unsaved changes flag is cleared.
+     *
+     * @param filename Filename of the save file, excluding extension.
+     * @param saveable Saveable object to save.
+     */
+    public void submit(final String filename, final Saveable saveable)
+    {
+        requireNonNull(filename);
+        if (!requireNonNull(saveable).getUnsavedChanges().getAndSet(false)) return;
+        if (pending.put(filename, saveable.toBytes()) != null)
+            coalesced.incrementAndGet();
+        if (executor.isShutdown())
+            flush(); // Late submissions during shutdown are written synchronously.
+        else arm(debounceNanos);
+    }
+
+    /* Schedules a flush after a delay, unless one is already scheduled. */
+    private void arm(final long delayNanos)
+    {
+        if (armed.compareAndSet(false, true))
+            executor.schedule(this::flushPending, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Writes all pending states, blocking until they are written.
+     */
+    public void flush()
+    {
+        if (executor.isShutdown())
+        {
+            flushPending();
+            return;
+        }
+        try
+        {
+            executor.submit(this::flushPending).get();
+        }
+        catch (final RejectedExecutionException e)
+        {
+            flushPending(); // Closed concurrently, so write on the caller's thread instead.
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (final ExecutionException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /* Writes every pending state as one group. Failed groups are retried by a scheduled flush. */
+    private synchronized void flushPending()
+    {
+        armed.set(false);
+        if (pending.isEmpty()) return;
+        final long start = System.nanoTime();
+        final Map<String, byte[]> flushed = new HashMap<>();
+        final SaveGroup group = new SaveGroup(manifest);
+        for (final String filename : pending.keySet())
+        {
+            final byte[] bytes = pending.remove(filename);
+            if (bytes == null) continue;
+            flushed.put(filename, bytes);
+            group.add(filename, bytes);
+        }
+        if (!group.commit())
+        {
+            failures.addAndGet(flushed.size());
+            flushed.forEach(pending::putIfAbsent); // Keep any newer state instead.
+            if (!executor.isShutdown())
+                arm(Math.max(debounceNanos, RETRY_NANOS));
+            return;
+        }
+
+        /* Only committed flushes are counted and timed, so the average is of successful flushes. */
+        final long latency = System.nanoTime() - start;
+        lastLatency = latency;
+        totalLatency.addAndGet(latency);
+        maxLatency.accumulate(latency);
+        flushes.incrementAndGet();
+        writes.addAndGet(flushed.size());
+    }
+
+    /**
+     * Registers a shutdown hook which closes the scheduler when the JVM exits.
+     *
+     * States which cannot be written upon exit are reported to standard error.
+     *
+     * @return This scheduler.
+     */
+    public SaveScheduler closeOnShutdown()
+    {
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+        {
+            try
+            {
+                close();
+            }
+            catch (final IOException e) { e.printStackTrace(); }
+        }, SaveScheduler.class.getSimpleName()));
+        return this;
+    }
+
+    /**
+     * Flushes all pending states and stops the background thread.
+     *
+     * Submissions after closing are written synchronously.
+     *
+     * @throws IOException If any pending state could not be written. Such states
+     * remain pending, and are retried by a later `flush` or `close`.
+     */
+    @Override public void close() throws IOException
+    {
+        if (!executor.isShutdown())
+        {
+            flush();
+            executor.shutdown();
+        }
+        flushPending();
+        if (!pending.isEmpty())
+            throw new IOException("Pending saves could not be written: " + pending.keySet());
+    }
+
+    /**
+     * @return Number of files with pending states.
+     */
+    public int getBacklog()
+    {
+        return pending.size();
+    }
+
+    /**
+     * @return Number of flushes which wrote at least one file.
+     */
+    public long getFlushCount()
+    {
+        return flushes.get();
+    }
+
+    /**
+     * @return Number of files written.
+     */
+    public long getWriteCount()
+    {
+        return writes.get();
+    }
+
+    /**
+     * @return Number of submissions which replaced a pending state.
+     */
+    public long getCoalescedCount()
+    {
+        return coalesced.get();
+    }
+
+    /**
+     * @return Number of failed file writes.
+     */
+    public long getFailureCount()
+    {
+        return failures.get();
+    }
+
+    /**
+     * @param unit Unit of the returned latency.
+     * @return Duration of the most recent flush which wrote at least one file.
+     */
+    public long getLastFlushLatency(final TimeUnit unit)
+    {
+        return unit.convert(lastLatency, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit Unit of the returned latency.
+     * @return Duration of the longest flush which wrote at least one file.
+     */
+    public long getMaxFlushLatency(final TimeUnit unit)
+    {
+        return unit.convert(maxLatency.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit Unit of the returned latency.
+     * @return Average duration of all flushes which wrote at least one file.
+     */
+    public long getAverageFlushLatency(final TimeUnit unit)
+    {
+        final long n = flushes.get();
+        return n == 0 ? 0 : unit.convert(totalLatency.get() / n, TimeUnit.NANOSECONDS);
+    }
+}
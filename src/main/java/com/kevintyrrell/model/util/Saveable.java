@@ -19,6 +19,9 @@
 package com.kevintyrrell.model.util;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.util.Objects.requireNonNull;
@@ -26,6 +29,14 @@ import static java.util.Objects.requireNonNull;
 /**
  * Defines an interface for objects which can be saved.
  *
+ * Saveable objects are written in a compact, versioned binary format:
+ *  [int] MAGIC, [short] format version, [...] state written by `writeState`.
+ * Objects write only their own state (e.g. counts and ids), never references
+ * to shared objects, and are read back into an existing instance via `restore`.
+ *
+ * Files written by previous versions through Java serialization (`SAVE_EXTENSION`)
+ * are still readable, and are migrated to the binary format on the next save.
+ *
  * @since 2.0
  */
 public interface Saveable extends Serializable
@@ -38,9 +49,20 @@ public interface Saveable extends Serializable
 
     /**
      * File extension of the serialized Saveable object(s).
+     * Java serialization is only used to migrate legacy save files.
      */
     String SAVE_EXTENSION = ".ser";
 
+    /**
+     * File extension of the binary Saveable object(s).
+     */
+    String BINARY_EXTENSION = ".dat";
+
+    /**
+     * Leading bytes of every binary save file ("D2RT").
+     */
+    int MAGIC = 0x44325254;
+
     /**
      * Flag provided by the inheriting class which controls
      * whether or not the object has unsaved changes present.
@@ -70,9 +92,9 @@ public interface Saveable extends Serializable
      * To change this behavior, override this method.
      * Returned filename should not contain a file extension.
      * Full path of the file will be dictated as such:
-     *  SAVE_DIRECTORY + getFileName() + SAVEABLE_EXTENSION
+     *  SAVE_DIRECTORY + getFileName() + BINARY_EXTENSION
      *
-     * @see Saveable#formatRelativePath(String)
+     * @see Saveable#formatRelativePath(String, String)
      * @return filename which will be saved/loaded from the storage medium.
      */
     default String getFileName()
@@ -80,10 +102,79 @@ public interface Saveable extends Serializable
         return getClass().getName();
     }
 
+    /**
+     * Version of the binary format written by `writeState`.
+     *
+     * Increment the version whenever the layout of `writeState` changes,
+     * and handle all previous versions within `readState`.
+     *
+     * @return Current version of the binary format.
+     */
+    default int getFormatVersion()
+    {
+        return 1;
+    }
+
+    /**
+     * Writes the state of the Saveable object in its binary format.
+     *
+     * @param out Output to write to.
+     * @throws IOException If the output could not be written to.
+     */
+    void writeState(DataOutput out) throws IOException;
+
+    /**
+     * Replaces the state of the Saveable object with state from its binary format.
+     *
+     * @param in Input to read from.
+     * @param version Version of the binary format which was written.
+     * @throws IOException If the input could not be read or is malformed.
+     */
+    void readState(DataInput in, int version) throws IOException;
+
+    /**
+     * Encodes the Saveable object, including the binary header.
+     *
+     * @return Encoded bytes of the Saveable object.
+     */
+    default byte[] toBytes()
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (final DataOutputStream out = new DataOutputStream(bytes))
+        {
+            out.writeInt(MAGIC);
+            out.writeShort(getFormatVersion());
+            writeState(out);
+        }
+        catch (final IOException e)
+        {
+            throw new UncheckedIOException(e); // In-memory streams do not throw.
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Replaces the state of the Saveable object with previously encoded bytes.
+     *
+     * @param bytes Encoded bytes of the Saveable object, including the binary header.
+     * @throws IOException If the bytes are malformed or of an unsupported version.
+     * @see Saveable#toBytes()
+     */
+    default void fromBytes(final byte[] bytes) throws IOException
+    {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(requireNonNull(bytes)));
+        if (in.readInt() != MAGIC)
+            throw new StreamCorruptedException("Save data is not of the binary save format.");
+        final int version = in.readUnsignedShort();
+        if (version > getFormatVersion())
+            throw new InvalidObjectException("Save data is of an unsupported version: " + version);
+        readState(in, version);
+    }
+
     /**
      * Writes the Saveable object to the storage medium.
      * The save directory and file extension are dictated by the
-     * `SAVE_DIRECTORY` and `SAVE_EXTENSION` constants respectively.
+     * `SAVE_DIRECTORY` and `BINARY_EXTENSION` constants respectively.
      * The default filename is the base class name of the Saveable object.
      *
      * @return true if saving to the storage medium was successful.
@@ -93,12 +184,9 @@ public interface Saveable extends Serializable
         final AtomicBoolean unsavedChanges = requireNonNull(getUnsavedChanges());
         if (!unsavedChanges.get()) return true; // No changes to save.
 
-        final File f = new File(formatRelativePath(requireNonNull(getFileName())));
-
-        try (final FileOutputStream fos = new FileOutputStream(f);
-             final ObjectOutputStream oos = new ObjectOutputStream(fos))
+        try
         {
-            oos.writeObject(this);
+            write(requireNonNull(getFileName()), toBytes());
             unsavedChanges.set(false);
             return true;
         }
@@ -108,10 +196,75 @@ public interface Saveable extends Serializable
     }
 
     /**
-     * Attempts to load the Saveable object from the storage medium.
+     * Writes encoded Saveable bytes to the storage medium.
+     *
+     * The file is written atomically; a crash mid-write leaves the previous save intact.
+     * To save multiple objects atomically as a whole, use a SaveGroup.
+     *
+     * @param filename Filename of the save file, excluding extension.
+     * @param bytes Encoded bytes of a Saveable object.
+     * @throws IOException If the file could not be written.
+     * @see Saveable#toBytes()
+     */
+    static void write(final String filename, final byte[] bytes) throws IOException
+    {
+        final Path path = pathOf(filename, BINARY_EXTENSION);
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        SaveGroup.writeAtomically(path, requireNonNull(bytes));
+    }
+
+    /**
+     * Restores the Saveable object from the storage medium.
+     *
+     * @return true if a save file was found and restored.
+     * @see Saveable#restore(String)
+     */
+    default boolean restore()
+    {
+        return restore(requireNonNull(getFileName()));
+    }
+
+    /**
+     * Restores the Saveable object from the storage medium.
+     *
+     * The binary save file is preferred. If it does not exist, a legacy
+     * serialized save file is migrated instead, and the object is flagged
+     * as having unsaved changes so that the next save is in the binary format.
+     *
+     * @param filename Filename of the save file, excluding extension.
+     * @return true if a save file was found and restored.
+     */
+    default boolean restore(final String filename)
+    {
+        final Path path = pathOf(filename, BINARY_EXTENSION);
+        try
+        {
+            if (Files.exists(path))
+            {
+                fromBytes(Files.readAllBytes(path));
+                return true;
+            }
+
+            final Saveable legacy = load(filename);
+            if (legacy == null) return false;
+            if (!getClass().isInstance(legacy))
+                throw new InvalidObjectException("Legacy save file is of a different type: " + filename);
+            fromBytes(legacy.toBytes()); // Legacy object re-encodes its own state.
+            flagUnsavedChanges();
+            return true;
+        }
+        catch (final IOException e) { e.printStackTrace(); }
+
+        return false;
+    }
+
+    /**
+     * Attempts to load a legacy serialized Saveable object from the storage medium.
      * Returns null if the expected serialized file does not exist,
      * or if an expected exception occurs during file I/O.
      *
+     * Prefer `restore()`, which reads the binary format and migrates legacy files.
+     *
      * For default filenames (uses class name), this method should be used.
      * If custom filenames are desired, call `load(String)` instead.
      * In addition, override `getFileName()` to specify the same filename.
@@ -128,7 +281,7 @@ public interface Saveable extends Serializable
     }
 
     /**
-     * Attempts to load the Saveable object from the storage medium.
+     * Attempts to load a legacy serialized Saveable object from the storage medium.
      * Returns null if the expected serialized file does not exist,
      * or if an expected exception occurs during file I/O.
      *
@@ -140,7 +293,7 @@ public interface Saveable extends Serializable
     @SuppressWarnings("unchecked")
     static <T extends Saveable> T load(final String filename)
     {
-        final File f = new File(formatRelativePath(requireNonNull(filename)));
+        final File f = new File(formatRelativePath(requireNonNull(filename), SAVE_EXTENSION));
 
         try (final FileInputStream fis = new FileInputStream(f);
              final ObjectInputStream ois = new ObjectInputStream(fis))
@@ -156,10 +309,23 @@ public interface Saveable extends Serializable
         return null;
     }
 
+    /**
+     * Resolves the path of a file within the save directory.
+     *
+     * @param filename Filename, excluding extension.
+     * @param extension Extension of the file.
+     * @return Path of the file, relative to the working directory.
+     */
+    static Path pathOf(final String filename, final String extension)
+    {
+        return Paths.get(formatRelativePath(requireNonNull(filename), requireNonNull(extension)));
+    }
+
     /* Formats the relative path for the file which is being saved or loaded. */
-    private static String formatRelativePath(final String filename)
+    private static String formatRelativePath(final String filename, final String extension)
     {
         assert filename != null;
-        return String.format("%s%s%s", SAVE_DIRECTORY, filename, SAVE_EXTENSION);
+        assert extension != null;
+        return String.format("%s%s%s", SAVE_DIRECTORY, filename, extension);
     }
 }
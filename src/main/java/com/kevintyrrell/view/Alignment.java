@@ -18,10 +18,12 @@
 
 package com.kevintyrrell.view;
 
-import java.util.Arrays;
+import com.kevintyrrell.view.console.AnsiText;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
 
-import static java.lang.String.join;
-import static java.util.Collections.nCopies;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -29,6 +31,10 @@ import static java.util.Objects.requireNonNull;
  *
  * For information on typographic alignement see: https://en.wikipedia.org/wiki/Typographic_alignment
  *
+ * Alignment appends directly into an Appendable, drawing padding from a shared
+ * buffer of spaces, so aligning a line allocates nothing beyond the output itself.
+ * Widths are measured in visible characters; console escape sequences are not counted.
+ *
  * @since 3.0
  */
 public enum Alignment
@@ -36,60 +42,87 @@ public enum Alignment
     /**
      * Left-align: Text borders the left and remaining space is appended.
      */
-    LEFT {@Override String alignImpl(final String line, final int width, final int len)
+    LEFT {@Override void alignImpl(final Appendable out, final CharSequence line, final int width, final int len)
+            throws IOException
     {
-        return line.concat(join("", nCopies(width - len, " ")));
+        pad(out.append(line), width - len);
     }},
     /**
      * Right-align: Text borders the right and remaining space is prepended.
      */
-    RIGHT {@Override String alignImpl(final String line, final int width, final int len)
+    RIGHT {@Override void alignImpl(final Appendable out, final CharSequence line, final int width, final int len)
+            throws IOException
     {
-        return join("", nCopies(width - len, " ")).concat(line);
+        pad(out, width - len).append(line);
     }},
     /**
      * Center-align: Text has no border and is evenly spaced on both sides, favoring the right side.
      */
-    CENTER {@Override String alignImpl(final String line, final int width, final int len)
+    CENTER {@Override void alignImpl(final Appendable out, final CharSequence line, final int width, final int len)
+            throws IOException
     {
         final int spaces = width - len;
-        final String s = join("", nCopies(spaces / 2, " "));
-        return s + line + s + ((spaces & 1) != 0 ? " " : "");
+        pad(pad(out, spaces / 2).append(line), spaces - spaces / 2);
     }},
     /**
      * Justification: Word spacing is overridden, first/last words border the sides, and space is evenly distributed.
      */
-    JUSTIFIED {@Override String alignImpl(final String line, final int width, final int len)
+    JUSTIFIED {@Override void alignImpl(final Appendable out, final CharSequence line, final int width, final int len)
+            throws IOException
     {
-        final String[] words = line.split("\\s+");
-        if (words.length <= 1) // Edge case: one or less words cannot be justified.
-            return line.concat(join("", nCopies(width - len, " ")));
+        /* First pass: count the words and their combined visible width. */
+        final int chars = line.length();
+        int words = 0, letters = 0;
+        for (int i = 0; i < chars; )
+        {
+            final int end = wordEnd(line, i, chars);
+            if (end > i)
+            {
+                words++;
+                letters += AnsiText.width(line, i, end);
+                i = end;
+            }
+            else i++;
+        }
+        if (words <= 1) // Edge case: one or less words cannot be justified.
+        {
+            pad(out.append(line), width - len);
+            return;
+        }
 
-        int spaces = width - Arrays.stream(words)
-                .mapToInt(String::length)
-                .sum();
         // Every word except the last gets N spaces appended to it.
-        final int[] wordSpacing = new int[words.length - 1];
-        Arrays.fill(wordSpacing, spaces / (words.length - 1));
-        spaces %= words.length - 1; // Calculate the number of left-over spaces.
+        final int gaps = words - 1, spacing = (width - letters) / gaps, extra = (width - letters) % gaps;
+        final int mid = words / 2;
 
-        final int mid = words.length / 2;
-        /* Iterate for as long as we have extra spaces to give out. */
-        for (int i = 0; i < spaces; i++)
-            /* Start from the center and iterate outwards, heading left, then right. */
-            wordSpacing[mid + (i + 1) / 2 - (i + 1) * (i & 1)]++;
-
-        /* Build the resulting string with the specified spacing. */
-        final StringBuilder builder = new StringBuilder(width);
-        for (int i = 0; i < wordSpacing.length; i++)
-            builder.append(words[i]).append(join("", nCopies(wordSpacing[i], " ")));
-        return builder.append(words[words.length - 1]).toString();
+        /* Second pass: append each word, followed by its share of the spacing. */
+        int gap = 0;
+        for (int i = 0; i < chars; )
+        {
+            final int end = wordEnd(line, i, chars);
+            if (end == i)
+            {
+                i++;
+                continue;
+            }
+            out.append(line, i, end);
+            i = end;
+            if (gap < gaps)
+            {
+                /* Left-over spaces are given out from the center outwards, heading left, then right. */
+                final int d = gap - mid, rank = d < 0 ? -2 * d - 1 : 2 * d;
+                pad(out, spacing + (rank < extra ? 1 : 0));
+                gap++;
+            }
+        }
     }};
 
+    /* Shared buffer from which all padding is drawn. */
+    private static final String SPACES = String.join("", Collections.nCopies(128, " "));
+
     /**
      * Aligns a string in accordance with the alignment value.
      *
-     * The specified width must be at least the size of the line itself.
+     * The specified width must be at least the visible width of the line itself.
      *
      * @param line Line to be aligned.
      * @param width Width of the aligned text.
@@ -97,11 +130,73 @@ public enum Alignment
      */
     public String align(final String line, final int width)
     {
-        final int len = requireNonNull(line).length();
+        if (width == AnsiText.width(requireNonNull(line))) return line;
+        return align(new StringBuilder(width), line, width).toString();
+    }
+
+    /**
+     * Aligns a line into a builder in accordance with the alignment value.
+     *
+     * @param sb Builder to append to.
+     * @param line Line to be aligned.
+     * @param width Width of the aligned text.
+     * @return The specified builder.
+     * @see Alignment#alignTo(Appendable, CharSequence, int)
+     */
+    public StringBuilder align(final StringBuilder sb, final CharSequence line, final int width)
+    {
+        try
+        {
+            return alignTo(sb, line, width);
+        }
+        catch (final IOException e)
+        {
+            throw new UncheckedIOException(e); // StringBuilder does not throw.
+        }
+    }
+
+    /**
+     * Aligns a line into an appendable in accordance with the alignment value.
+     *
+     * The specified width must be at least the visible width of the line itself.
+     * Escape sequences, such as ConsoleColor codes, occupy no width.
+     *
+     * @param out Appendable to append to.
+     * @param line Line to be aligned.
+     * @param width Width of the aligned text.
+     * @param <A> Type of the appendable.
+     * @return The specified appendable.
+     * @throws IOException If the appendable fails to append.
+     */
+    public <A extends Appendable> A alignTo(final A out, final CharSequence line, final int width) throws IOException
+    {
+        requireNonNull(out);
+        final int len = AnsiText.width(requireNonNull(line));
         if (width < len) throw new IllegalArgumentException("Unable to align string to width of lesser size.");
-        if (width == len) return line;
-        return alignImpl(line, width, len);
+        if (width == len) out.append(line);
+        else alignImpl(out, line, width, len);
+        return out;
     }
 
-    abstract String alignImpl(final String line, final int width, final int len);
+    abstract void alignImpl(final Appendable out, final CharSequence line, final int width, final int len)
+            throws IOException;
+
+    /* Appends a number of spaces, drawn from the shared buffer. */
+    private static Appendable pad(final Appendable out, int spaces) throws IOException
+    {
+        while (spaces > 0)
+        {
+            final int n = Math.min(spaces, SPACES.length());
+            out.append(SPACES, 0, n);
+            spaces -= n;
+        }
+        return out;
+    }
+
+    /* Index following the word which begins at the start index, or the start index if it is whitespace. */
+    private static int wordEnd(final CharSequence line, int i, final int len)
+    {
+        while (i < len && !Character.isWhitespace(line.charAt(i))) i++;
+        return i;
+    }
 }
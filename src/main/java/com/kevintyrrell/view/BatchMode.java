@@ -0,0 +1,197 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.view;
+
+import com.kevintyrrell.lang.LocaleContext;
+import com.kevintyrrell.lang.LocaleKey;
+import com.kevintyrrell.model.diablo.rune.Rune;
+import com.kevintyrrell.model.diablo.rune.RuneMap;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a non-interactive mode which applies commands read from a file or pipe.
+ *
+ * Only the `add` and `toss` commands are supported, one per line. The input is
+ * read into a single buffer which is tokenized in place, without a String per line.
+ *
+ * Rather than changing the rune map command by command, every command accumulates
+ * into a single delta which is applied once all input is read. The caller is then
+ * expected to render and save once, rather than once per command.
+ *
+ * Commands which cannot be applied, such as tossing more runes than would be
+ * owned at that point of the input, are rejected and reported without stopping the batch.
+ *
+ * @since 3.0
+ */
+public final class BatchMode
+{
+    /* Initial capacity of the input buffer. */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final RuneMap runes;
+    private final LocaleContext context;
+    private final CommandTokenizer tokens = new CommandTokenizer();
+
+    /* Messages of each rejected command or token. */
+    private final List<String> errors = new ArrayList<>();
+    private int commands, applied;
+
+    /**
+     * @param runes Runes in which the player owns.
+     */
+    public BatchMode(final RuneMap runes)
+    {
+        this(runes, LocaleContext.DEFAULT);
+    }
+
+    /**
+     * @param runes Runes in which the player owns.
+     * @param context Locale of the commands and messages.
+     */
+    public BatchMode(final RuneMap runes, final LocaleContext context)
+    {
+        this.runes = requireNonNull(runes);
+        this.context = requireNonNull(context);
+    }
+
+    /**
+     * Reads all commands from the input, then applies them to the rune map as one delta.
+     *
+     * @param in Input of commands, one per line.
+     * @return true if every command was applied.
+     * @throws IOException If the input could not be read.
+     */
+    public boolean run(final Reader in) throws IOException
+    {
+        final CharBuffer input = readFully(requireNonNull(in));
+        /* Quantities as of the current line, so tosses are validated in order. */
+        final int[] held = new int[Rune.extension.size()], delta = new int[held.length];
+        for (final Rune rune : Rune.extension.values())
+            held[rune.ordinal()] = runes.count(rune);
+
+        tokens.reset(input);
+        int number = 0;
+        do
+        {
+            number++;
+            if (!tokens.next()) continue; // Blank line.
+            commands++;
+            final Command command = tokens.command(context);
+            if (command == null)
+                reject(number, LocaleKey.COMMANDS_BATCH_EX_DNE, tokens.token());
+            else if (command != Command.ADD && command != Command.TOSS)
+                reject(number, LocaleKey.COMMANDS_BATCH_EX_UNSUPPORTED, tokens.token());
+            else if (apply(number, command == Command.ADD, held, delta))
+                applied++;
+        } while (tokens.nextLine());
+
+        runes.applyDelta(delta);
+        return applied == commands;
+    }
+
+    /* Reads the entire input into a single buffer, which is tokenized in place. */
+    private static CharBuffer readFully(final Reader in) throws IOException
+    {
+        CharBuffer buffer = CharBuffer.allocate(READ_BUFFER_SIZE);
+        while (true)
+        {
+            if (!buffer.hasRemaining())
+            {
+                buffer.flip();
+                buffer = CharBuffer.allocate(buffer.capacity() * 2).put(buffer);
+            }
+            if (in.read(buffer) < 0) break;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /* Accumulates each rune token of an add or toss command into the delta. */
+    private boolean apply(final int number, final boolean add, final int[] held, final int[] delta)
+    {
+        boolean success = true;
+        while (tokens.next())
+        {
+            final Rune rune = tokens.rune();
+            if (rune == null)
+            {
+                reject(number, add ? LocaleKey.COMMANDS_ADD_EX_DNE : LocaleKey.COMMANDS_TOSS_EX_DNE, tokens.token());
+                success = false;
+                continue;
+            }
+            final int i = rune.ordinal(), quantity = tokens.quantity();
+            if (add ? held[i] > Integer.MAX_VALUE - quantity : held[i] < quantity)
+            {
+                reject(number, add ? LocaleKey.COMMANDS_ADD_EX_OVERFLOW : LocaleKey.COMMANDS_TOSS_EX_ILLEGAL, rune);
+                success = false;
+                continue;
+            }
+            held[i] += add ? quantity : -quantity;
+            delta[i] += add ? quantity : -quantity;
+        }
+        return success;
+    }
+
+    /* Records an error message, prefixed by its line number. */
+    private void reject(final int number, final LocaleKey key, final Object arg)
+    {
+        errors.add(context.template(LocaleKey.COMMANDS_BATCH_EX_LINE)
+                .format(number, context.template(key).format(arg)));
+    }
+
+    /**
+     * @return Read-only list of messages of each rejected command or token.
+     */
+    public List<String> getErrors()
+    {
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * @return Number of commands read.
+     */
+    public int getCommandCount()
+    {
+        return commands;
+    }
+
+    /**
+     * @return Number of commands applied without any rejected tokens.
+     */
+    public int getAppliedCount()
+    {
+        return applied;
+    }
+
+    /**
+     * @return Localized summary of the batch.
+     */
+    public String summary()
+    {
+        return context.template(LocaleKey.COMMANDS_BATCH_SUMMARY).format(applied, commands);
+    }
+}
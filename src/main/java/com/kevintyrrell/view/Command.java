@@ -18,29 +18,71 @@
 
 package com.kevintyrrell.view;
 
-import com.kevintyrrell.lang.Locale;
-import com.kevintyrrell.model.util.CachedValue;
+import com.kevintyrrell.lang.LocaleContext;
+import com.kevintyrrell.lang.LocaleKey;
 import com.kevintyrrell.model.util.EnumExtendable;
 
+import static java.util.Objects.requireNonNull;
+
 /**
- * ...
+ * Defines the commands which the user may enter.
+ *
+ * Names of commands are localized; the same command may be entered differently in each locale.
  *
  * @since 3.0
  */
 public enum Command
 {
-    ADD("commands/add/command", "commands/add/hint")
+    ADD(LocaleKey.COMMANDS_ADD_COMMAND, LocaleKey.COMMANDS_ADD_HINT),
+    TOSS(LocaleKey.COMMANDS_TOSS_COMMAND, LocaleKey.COMMANDS_TOSS_HINT),
+    FILTER(LocaleKey.COMMANDS_FILTER_COMMAND, LocaleKey.COMMANDS_FILTER_HINT),
+    SORT(LocaleKey.COMMANDS_SORT_COMMAND, LocaleKey.COMMANDS_SORT_HINT),
+    INFO(LocaleKey.COMMANDS_INFO_COMMAND, LocaleKey.COMMANDS_INFO_HINT),
+    THRESHOLD(LocaleKey.COMMANDS_THRESHOLD_COMMAND, LocaleKey.COMMANDS_THRESHOLD_HINT),
+    HELP(LocaleKey.COMMANDS_HELP_COMMAND, LocaleKey.COMMANDS_HELP_HINT),
+    QUIT(LocaleKey.COMMANDS_QUIT_COMMAND, LocaleKey.COMMANDS_QUIT_HINT);
+
+    /* Key of the localized name, which the user enters. */
+    private final LocaleKey nameKey;
+    /* Key of the localized description. */
+    private final LocaleKey hintKey;
 
-    ;
+    Command(final LocaleKey nameKey, final LocaleKey hintKey)
+    {
+        assert nameKey != null;
+        assert hintKey != null;
+        this.nameKey = nameKey;
+        this.hintKey = hintKey;
+    }
 
-    Command(final String namePath, final String hintPath)
+    /**
+     * @param context Locale of the session.
+     * @return Localized name of the command, which the user enters.
+     */
+    public String getName(final LocaleContext context)
+    {
+        return requireNonNull(context).get(nameKey);
+    }
+
+    /**
+     * @param context Locale of the session.
+     * @return Localized description of the command.
+     */
+    public String getHint(final LocaleContext context)
+    {
+        return requireNonNull(context).get(hintKey);
+    }
+
+    /**
+     * @return Key of the localized name of the command.
+     */
+    public LocaleKey getNameKey()
     {
-        assert namePath != null;
-        assert hintPath != null;
+        return nameKey;
     }
 
     /**
-     * Extension of the enum, adding additio nal functionality.
+     * Extension of the enum, adding additional functionality.
      */
     public static final EnumExtendable<Command> extension = new EnumExtendable<>(Command.class);
 }
@@ -0,0 +1,219 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.view;
+
+import com.kevintyrrell.lang.Locale;
+import com.kevintyrrell.lang.LocaleContext;
+import com.kevintyrrell.model.diablo.rune.Rune;
+
+import java.nio.CharBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a tokenizer of user-entered commands over a CharBuffer.
+ *
+ * Input is split into lines, and each line into whitespace-delimited tokens.
+ * Tokens are slices of the buffer, described by their absolute start and end
+ * indices rather than copied. Commands are resolved through a dispatch table
+ * keyed on the localized command names of each locale, and rune tokens such
+ * as `ort3` are parsed in place; neither allocates.
+ *
+ * A tokenizer is reusable, but is not thread-safe.
+ *
+ * @since 3.0
+ */
+public final class CommandTokenizer
+{
+    /* Maximum number of digits of a rune quantity, so that it cannot overflow. */
+    private static final int MAX_QUANTITY_DIGITS = 9;
+
+    /* Runes keyed by name. */
+    private static final TokenTable<Rune> runeTable = new TokenTable<>(Rune.extension.values().stream()
+            .collect(Collectors.toMap(Rune::getName, Function.identity())));
+    /* Dispatch table of each locale, keyed by localized command name, indexed by locale ordinal. */
+    private static final TokenTable<?>[] commandTables = new TokenTable<?>[Locale.values().length];
+
+    private CharBuffer buffer = CharBuffer.allocate(0);
+    /* Absolute index at which the next line begins. */
+    private int nextLine;
+    /* Absolute bounds of the current line, and the index from which the next token is searched. */
+    private int lineEnd, position;
+    /* Absolute bounds of the current token. */
+    private int start, end;
+    /* Quantity of the most recently matched rune token. */
+    private int quantity;
+
+    /**
+     * Begins tokenizing a new input, positioned at its first line.
+     *
+     * @param input Input to tokenize, such as a single line.
+     * @return This tokenizer.
+     */
+    public CommandTokenizer reset(final CharSequence input)
+    {
+        return reset(CharBuffer.wrap(requireNonNull(input)));
+    }
+
+    /**
+     * Begins tokenizing the remaining characters of a buffer, positioned at its first line.
+     *
+     * The buffer is read by absolute index; its position and limit are not modified.
+     *
+     * @param buffer Buffer to tokenize.
+     * @return This tokenizer.
+     */
+    public CommandTokenizer reset(final CharBuffer buffer)
+    {
+        this.buffer = requireNonNull(buffer);
+        nextLine = buffer.position();
+        nextLine();
+        return this;
+    }
+
+    /**
+     * Advances to the next line of the input, discarding any remaining tokens of the current line.
+     *
+     * @return true if a line was found, false if the input is exhausted.
+     */
+    public boolean nextLine()
+    {
+        final int limit = buffer.limit();
+        if (nextLine > limit || nextLine == limit && nextLine > buffer.position()) return false;
+        position = start = end = nextLine;
+        lineEnd = nextLine;
+        while (lineEnd < limit && buffer.get(lineEnd) != '\n') lineEnd++;
+        nextLine = lineEnd + 1;
+        return true;
+    }
+
+    /**
+     * Advances to the next token of the current line.
+     *
+     * @return true if a token was found, false if the line is exhausted.
+     */
+    public boolean next()
+    {
+        while (position < lineEnd && Character.isWhitespace(buffer.get(position))) position++;
+        if (position >= lineEnd) return false;
+        start = position;
+        while (position < lineEnd && !Character.isWhitespace(buffer.get(position))) position++;
+        end = position;
+        return true;
+    }
+
+    /**
+     * @return Absolute index of the first character of the current token.
+     */
+    public int start()
+    {
+        return start;
+    }
+
+    /**
+     * @return Absolute index following the last character of the current token.
+     */
+    public int end()
+    {
+        return end;
+    }
+
+    /**
+     * @return Read-only view of the current token, sharing the input's characters.
+     */
+    public CharBuffer slice()
+    {
+        final CharBuffer slice = buffer.asReadOnlyBuffer();
+        slice.limit(end).position(start);
+        return slice;
+    }
+
+    /**
+     * Copies the current token, such as for an error message.
+     *
+     * @return Current token.
+     */
+    public String token()
+    {
+        return slice().toString();
+    }
+
+    /**
+     * Resolves the current token as a command, ignoring case.
+     *
+     * @param context Locale of the session, whose command names are matched.
+     * @return Command of the current token, or null if it is not a command.
+     */
+    public Command command(final LocaleContext context)
+    {
+        return commandTable(requireNonNull(context).getLocale()).get(buffer, start, end);
+    }
+
+    /**
+     * Resolves the current token as a rune followed by an optional quantity.
+     *
+     * For example, `ort3` is three Ort runes, while `ort` is a single Ort rune.
+     * The quantity of the rune is then available through `quantity()`.
+     *
+     * @return Rune of the current token, or null if it is not a rune with a positive quantity.
+     */
+    public Rune rune()
+    {
+        int digits = end;
+        while (digits > start && Character.isDigit(buffer.get(digits - 1))) digits--;
+        if (digits == start || end - digits > MAX_QUANTITY_DIGITS) return null;
+
+        int quantity = digits == end ? 1 : 0;
+        for (int i = digits; i < end; i++)
+            quantity = quantity * 10 + Character.digit(buffer.get(i), 10);
+        if (quantity <= 0) return null;
+
+        final Rune rune = runeTable.get(buffer, start, digits);
+        if (rune != null) this.quantity = quantity;
+        return rune;
+    }
+
+    /**
+     * @return Quantity of the rune most recently resolved by `rune()`.
+     */
+    public int quantity()
+    {
+        return quantity;
+    }
+
+    /* Dispatch table of the locale, built upon first use. Racy single-check; tables are immutable. */
+    @SuppressWarnings("unchecked")
+    private static TokenTable<Command> commandTable(final Locale locale)
+    {
+        TokenTable<Command> table = (TokenTable<Command>)commandTables[locale.ordinal()];
+        if (table == null)
+        {
+            final LocaleContext context = new LocaleContext(locale);
+            final Map<String, Command> names = new HashMap<>();
+            for (final Command command : Command.extension.values())
+                names.put(command.getName(context), command);
+            commandTables[locale.ordinal()] = table = new TokenTable<>(names);
+        }
+        return table;
+    }
+}
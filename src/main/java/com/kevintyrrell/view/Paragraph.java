@@ -18,49 +18,263 @@
 
 package com.kevintyrrell.view;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Objects;
+
+import static java.util.Objects.requireNonNull;
 
 /**
  * Immutable multi-line String which can be aligned in a multitude of ways.
  *
+ * Content is word-wrapped to the width of the paragraph, keeping any existing line breaks.
+ * Words longer than the width are broken across lines. Wrapping is greedy by default,
+ * taking linear time. Alternatively, breaks may be chosen to minimize raggedness:
+ * the sum of the squares of the trailing space of each line, excluding the last line.
+ *
+ * Layouts are memoized per (content, width, alignment, breaking), so re-constructing
+ * the same paragraph at the same width does not wrap the content again.
+ *
  * @since 2.0
  */
 public class Paragraph
 {
+    /* Maximum number of memoized layouts. */
+    private static final int CACHE_SIZE = 256;
+    /* Memoized layouts, evicting the least recently used. */
+    private static final Map<LayoutKey, List<String>> layouts =
+            new LinkedHashMap<>(CACHE_SIZE * 4 / 3 + 1, 0.75f, true)
+    {
+        @Override protected boolean removeEldestEntry(final Map.Entry<LayoutKey, List<String>> eldest)
+        {
+            return size() > CACHE_SIZE;
+        }
+    };
+
     /* Immutable list of each line of the paragraph. */
     private final List<String> lines;
     /* Maximum width of the paragraph. */
     private final int width;
 
+    /**
+     * Constructs a greedily wrapped paragraph.
+     *
+     * @param content Content of the paragraph.
+     * @param width Width of each line.
+     * @param alignment Alignment of each line.
+     */
     public Paragraph(final String content, final int width, final Alignment alignment)
     {
-        this.lines = null;
-        this.width = 0;
+        this(content, width, alignment, false);
+    }
+
+    /**
+     * @param content Content of the paragraph.
+     * @param width Width of each line.
+     * @param alignment Alignment of each line.
+     * @param minimumRaggedness true to minimize raggedness, rather than wrapping greedily.
+     */
+    public Paragraph(final String content, final int width, final Alignment alignment,
+                     final boolean minimumRaggedness)
+    {
+        if (width <= 0) throw new IllegalArgumentException("Paragraph width must be positive.");
+        final LayoutKey key = new LayoutKey(requireNonNull(content), width, requireNonNull(alignment),
+                minimumRaggedness);
+        List<String> lines;
+        synchronized (layouts)
+        {
+            lines = layouts.get(key);
+        }
+        if (lines == null)
+        {
+            lines = layout(key);
+            synchronized (layouts)
+            {
+                layouts.put(key, lines);
+            }
+        }
+        this.lines = lines;
+        this.width = width;
+    }
+
+    /**
+     * @return Immutable list of each line of the paragraph, each of which is exactly the paragraph's width.
+     */
+    public List<String> getLines()
+    {
+        return lines;
     }
 
-    private List<String> parseContent(final String content)
+    /**
+     * @return Width of each line.
+     */
+    public int getWidth()
     {
-        assert content != null;
-        final Pattern p = Pattern.compile("\n");
-        final LinkedList<String> lines = p.splitAsStream(content)
-                .collect(Collectors.toCollection(LinkedList::new));
-        final ListIterator<String> iter = lines.listIterator();
+        return width;
+    }
 
-        final Pattern p2 = Pattern.compile("\\s+");
+    /**
+     * @return String representation of the paragraph.
+     */
+    @Override public String toString()
+    {
+        return String.join("\n", lines);
+    }
 
-        while (iter.hasNext())
+    /* Wraps and aligns the content of the layout. */
+    private static List<String> layout(final LayoutKey key)
+    {
+        final String content = key.content;
+        final List<String> lines = new ArrayList<>();
+        final StringBuilder sb = new StringBuilder(key.width);
+        /* Wrap each existing line on its own. */
+        for (int start = 0, end; start <= content.length(); start = end + 1)
         {
-            final String current = iter.next();
-            final Matcher m = p2.matcher(current);
-            //m.hitEnd()
+            end = content.indexOf('\n', start);
+            if (end < 0) end = content.length();
+            final int[] words = words(content, start, end, key.width);
+            final int count = words.length / 2;
+            final int[] breaks = key.minimumRaggedness
+                    ? minimumRaggedBreaks(words, count, key.width)
+                    : greedyBreaks(words, count, key.width);
+
+            for (int b = 0, first = 0; b <= breaks.length; b++)
+            {
+                final int last = b < breaks.length ? breaks[b] : count; // Exclusive.
+                sb.setLength(0);
+                for (int w = first; w < last; w++)
+                {
+                    if (w > first) sb.append(' ');
+                    sb.append(content, words[w * 2], words[w * 2 + 1]);
+                }
+                /* The final line of justified text is left-aligned, as is typographic convention. */
+                final Alignment alignment = key.alignment == Alignment.JUSTIFIED && last == count
+                        ? Alignment.LEFT : key.alignment;
+                lines.add(alignment.align(sb.toString(), key.width));
+                first = last;
+            }
         }
+        return Collections.unmodifiableList(lines);
+    }
 
-        return lines;
+    /**
+     * Locates the words of a line, breaking any word which exceeds the width.
+     *
+     * @return Start (inclusive) and end (exclusive) index pairs of each word.
+     */
+    private static int[] words(final String content, final int start, final int end, final int width)
+    {
+        int[] words = new int[16];
+        int size = 0;
+        for (int i = start; i < end; )
+        {
+            if (Character.isWhitespace(content.charAt(i)))
+            {
+                i++;
+                continue;
+            }
+            int j = i;
+            while (j < end && !Character.isWhitespace(content.charAt(j))) j++;
+            for (; i < j; i = Math.min(i + width, j))
+            {
+                if (size + 2 > words.length) words = Arrays.copyOf(words, words.length * 2);
+                words[size++] = i;
+                words[size++] = Math.min(i + width, j);
+            }
+        }
+        return Arrays.copyOf(words, size);
+    }
+
+    /**
+     * Breaks greedily, placing as many words on each line as will fit.
+     *
+     * @return Index of the first word of each line, excluding the first line.
+     */
+    private static int[] greedyBreaks(final int[] words, final int count, final int width)
+    {
+        final int[] breaks = new int[Math.max(count - 1, 0)];
+        int size = 0, len = -1;
+        for (int w = 0; w < count; w++)
+        {
+            final int wordLength = words[w * 2 + 1] - words[w * 2];
+            if (len >= 0 && len + 1 + wordLength > width)
+            {
+                breaks[size++] = w;
+                len = -1;
+            }
+            len += 1 + wordLength;
+        }
+        return Arrays.copyOf(breaks, size);
+    }
+
+    /**
+     * Breaks to minimize the sum of squared trailing space of all lines except the last.
+     *
+     * @return Index of the first word of each line, excluding the first line.
+     */
+    private static int[] minimumRaggedBreaks(final int[] words, final int count, final int width)
+    {
+        /* cost[i]: minimum cost of laying out words [i, count); next[i]: first word of the following line. */
+        final long[] cost = new long[count + 1];
+        final int[] next = new int[count + 1];
+        for (int i = count - 1; i >= 0; i--)
+        {
+            cost[i] = Long.MAX_VALUE;
+            int len = -1;
+            for (int j = i; j < count; j++)
+            {
+                len += 1 + words[j * 2 + 1] - words[j * 2];
+                if (len > width) break;
+                final long slack = width - len;
+                final long c = (j + 1 == count ? 0 : slack * slack) + cost[j + 1];
+                if (c < cost[i])
+                {
+                    cost[i] = c;
+                    next[i] = j + 1;
+                }
+            }
+        }
+
+        final int[] breaks = new int[Math.max(count - 1, 0)];
+        int size = 0;
+        for (int i = count > 0 ? next[0] : 0; i < count; i = next[i])
+            breaks[size++] = i;
+        return Arrays.copyOf(breaks, size);
+    }
+
+    /* Identifies a memoized layout. */
+    private static final class LayoutKey
+    {
+        private final String content;
+        private final int width;
+        private final Alignment alignment;
+        private final boolean minimumRaggedness;
+
+        private LayoutKey(final String content, final int width, final Alignment alignment,
+                          final boolean minimumRaggedness)
+        {
+            this.content = content;
+            this.width = width;
+            this.alignment = alignment;
+            this.minimumRaggedness = minimumRaggedness;
+        }
+
+        @Override public boolean equals(final Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof LayoutKey)) return false;
+            final LayoutKey other = (LayoutKey)o;
+            return width == other.width && alignment == other.alignment
+                    && minimumRaggedness == other.minimumRaggedness && content.equals(other.content);
+        }
+
+        @Override public int hashCode()
+        {
+            return Objects.hash(content, width, alignment, minimumRaggedness);
+        }
     }
 }
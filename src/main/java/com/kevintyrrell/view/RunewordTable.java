@@ -0,0 +1,210 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.view;
+
+import com.kevintyrrell.lang.LocaleContext;
+import com.kevintyrrell.lang.LocaleKey;
+import com.kevintyrrell.model.diablo.rune.CubePlanner;
+import com.kevintyrrell.model.diablo.rune.ReadOnlyRuneMap;
+import com.kevintyrrell.model.diablo.runeword.Runeword;
+import com.kevintyrrell.model.diablo.runeword.RunewordFilter;
+import com.kevintyrrell.model.diablo.runeword.RunewordSorter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a renderer of runewords as a fixed-width table.
+ *
+ * Rows are gathered in a single pass, during which the width of each column and the
+ * progress towards each runeword are computed. Rows are then streamed into a buffered
+ * writer; each cell is aligned directly into the writer rather than built as a String.
+ *
+ * @since 3.0
+ */
+public final class RunewordTable
+{
+    /* Columns of the table, in order. */
+    private static final int NAME = 0, WORD = 1, LEVEL = 2, SOCKETS = 3, PROGRESS = 4;
+    private static final LocaleKey[] HEADERS = {
+            LocaleKey.RUNEWORDS_COLUMNS_NAME, LocaleKey.RUNEWORDS_COLUMNS_WORD, LocaleKey.RUNEWORDS_COLUMNS_LEVEL,
+            LocaleKey.RUNEWORDS_COLUMNS_SOCKETS, LocaleKey.RUNEWORDS_COLUMNS_PROGRESS };
+    private static final Alignment[] ALIGNMENTS = {
+            Alignment.LEFT, Alignment.LEFT, Alignment.RIGHT, Alignment.RIGHT, Alignment.RIGHT };
+
+    /* Spacing between each column. */
+    private static final String COLUMN_GAP = "  ";
+    /* Width of the widest progress cell, "100.0%". */
+    private static final int PROGRESS_WIDTH = 6;
+
+    private final ReadOnlyRuneMap runes;
+    private final LocaleContext context;
+
+    /**
+     * @param runes Runes in which the player owns.
+     */
+    public RunewordTable(final ReadOnlyRuneMap runes)
+    {
+        this(runes, LocaleContext.DEFAULT);
+    }
+
+    /**
+     * @param runes Runes in which the player owns.
+     * @param context Locale of the column headers.
+     */
+    public RunewordTable(final ReadOnlyRuneMap runes, final LocaleContext context)
+    {
+        this.runes = requireNonNull(runes);
+        this.context = requireNonNull(context);
+    }
+
+    /**
+     * Renders the runewords which pass the filter, in the order of the sorter.
+     *
+     * Progress counts runes which cube upgrades could make if either the filter or the sorter does.
+     *
+     * @param out Writer to write to.
+     * @param filter Filter of the runewords.
+     * @param sorter Sorter of the runewords.
+     * @throws IOException If the writer fails to write.
+     */
+    public void render(final Writer out, final RunewordFilter filter, final RunewordSorter sorter)
+            throws IOException
+    {
+        render(out, requireNonNull(sorter).flatMap(requireNonNull(filter).stream()),
+                filter.isCountingUpgrades() || sorter.isCountingUpgrades());
+    }
+
+    /**
+     * Renders runewords as rows of the table, in the order which they are streamed.
+     *
+     * The writer is flushed, but not closed, once the table is rendered.
+     *
+     * @param out Writer to write to.
+     * @param runewords Runewords to render, already filtered and sorted.
+     * @throws IOException If the writer fails to write.
+     */
+    public void render(final Writer out, final Stream<Runeword> runewords) throws IOException
+    {
+        render(out, runewords, false);
+    }
+
+    /**
+     * Renders runewords as rows of the table, in the order which they are streamed.
+     *
+     * The writer is flushed, but not closed, once the table is rendered.
+     * Progress is read from a single snapshot of the runes, taken when rendering begins.
+     *
+     * @param out Writer to write to.
+     * @param runewords Runewords to render, already filtered and sorted.
+     * @param countUpgrades true to show progress which counts runes that cube upgrades could make.
+     * @throws IOException If the writer fails to write.
+     * @see CubePlanner#effectiveProgress(ReadOnlyRuneMap)
+     */
+    public void render(final Writer out, final Stream<Runeword> runewords, final boolean countUpgrades)
+            throws IOException
+    {
+        final BufferedWriter writer = requireNonNull(out) instanceof BufferedWriter
+                ? (BufferedWriter)out : new BufferedWriter(out);
+
+        final String[] headers = new String[HEADERS.length];
+        final int[] widths = new int[HEADERS.length];
+        for (int c = 0; c < HEADERS.length; c++)
+            widths[c] = (headers[c] = context.get(HEADERS[c])).length();
+        widths[PROGRESS] = Math.max(widths[PROGRESS], PROGRESS_WIDTH);
+
+        /* Every row reads one snapshot, so concurrent changes to the runes cannot skew progress mid-table. */
+        final ReadOnlyRuneMap snapshot = runes.snapshot();
+        /* The planner memoizes each runeword, so each is planned once per render. */
+        final ToDoubleFunction<Runeword> progressOf = countUpgrades
+                ? new CubePlanner(snapshot)::effectiveProgress : snapshot::progressTowards;
+
+        /* Single pass: gather the rows, their progress, and the width of each column. */
+        Runeword[] rows = new Runeword[64];
+        double[] progress = new double[rows.length];
+        int size = 0;
+        for (final Iterator<Runeword> iter = requireNonNull(runewords).iterator(); iter.hasNext(); size++)
+        {
+            final Runeword rw = iter.next();
+            if (size == rows.length)
+            {
+                rows = Arrays.copyOf(rows, size * 2);
+                progress = Arrays.copyOf(progress, size * 2);
+            }
+            rows[size] = rw;
+            progress[size] = progressOf.applyAsDouble(rw);
+            widths[NAME] = Math.max(widths[NAME], rw.getName().length());
+            widths[WORD] = Math.max(widths[WORD], rw.getWord().length());
+            widths[LEVEL] = Math.max(widths[LEVEL], digits(rw.getLevel()));
+            widths[SOCKETS] = Math.max(widths[SOCKETS], digits(rw.getRequiredSockets()));
+        }
+
+        /* Header, followed by a rule beneath it. */
+        int total = -COLUMN_GAP.length();
+        for (int c = 0; c < headers.length; c++)
+        {
+            if (c > 0) writer.write(COLUMN_GAP);
+            ALIGNMENTS[c].alignTo(writer, headers[c], widths[c]);
+            total += COLUMN_GAP.length() + widths[c];
+        }
+        writer.newLine();
+        for (int i = 0; i < total; i++) writer.write('-');
+        writer.newLine();
+
+        /* Numeric cells are formatted into one reused buffer. */
+        final StringBuilder cell = new StringBuilder(PROGRESS_WIDTH);
+        for (int r = 0; r < size; r++)
+        {
+            final Runeword rw = rows[r];
+            ALIGNMENTS[NAME].alignTo(writer, rw.getName(), widths[NAME]);
+            ALIGNMENTS[WORD].alignTo(writer.append(COLUMN_GAP), rw.getWord(), widths[WORD]);
+            cell.setLength(0);
+            ALIGNMENTS[LEVEL].alignTo(writer.append(COLUMN_GAP), cell.append(rw.getLevel()), widths[LEVEL]);
+            cell.setLength(0);
+            ALIGNMENTS[SOCKETS].alignTo(writer.append(COLUMN_GAP),
+                    cell.append(rw.getRequiredSockets()), widths[SOCKETS]);
+            cell.setLength(0);
+            ALIGNMENTS[PROGRESS].alignTo(writer.append(COLUMN_GAP), percent(cell, progress[r]), widths[PROGRESS]);
+            writer.newLine();
+        }
+        writer.flush();
+    }
+
+    /* Formats progress as a percentage with one decimal place, such as "42.5%". */
+    private static StringBuilder percent(final StringBuilder sb, final double progress)
+    {
+        final int tenths = (int)Math.round(Math.min(Math.max(progress, 0), 1) * 1000);
+        return sb.append(tenths / 10).append('.').append(tenths % 10).append('%');
+    }
+
+    /* Number of decimal digits of a non-negative integer. */
+    private static int digits(int n)
+    {
+        int digits = 1;
+        while ((n /= 10) > 0) digits++;
+        return digits;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.view;
+
+import java.nio.CharBuffer;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines an immutable, case-insensitive lookup table of values keyed by Strings.
+ *
+ * Lookups take a slice of a CharBuffer rather than a String, hashing and comparing
+ * the slice in place; resolving a token therefore never allocates.
+ *
+ * @param <T> Type of values in the table.
+ * @since 3.0
+ */
+final class TokenTable<T>
+{
+    /* Open-addressed slots; a null key marks an empty slot. */
+    private final String[] keys;
+    private final Object[] values;
+    private final int mask;
+
+    /**
+     * @param entries Keys and their values; keys must be unique, ignoring case.
+     */
+    TokenTable(final Map<String, T> entries)
+    {
+        int capacity = Integer.highestOneBit(Math.max(requireNonNull(entries).size(), 1) * 2) << 1;
+        keys = new String[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (final Map.Entry<String, T> e : entries.entrySet())
+        {
+            final String key = requireNonNull(e.getKey());
+            int slot = hash(key, 0, key.length()) & mask;
+            while (keys[slot] != null)
+            {
+                if (keys[slot].equalsIgnoreCase(key))
+                    throw new IllegalArgumentException("Keys are not unique, ignoring case: " + key);
+                slot = slot + 1 & mask;
+            }
+            keys[slot] = key;
+            values[slot] = requireNonNull(e.getValue());
+        }
+    }
+
+    /**
+     * @param buffer Buffer containing the token.
+     * @param start Absolute index of the first character of the token.
+     * @param end Absolute index following the last character of the token.
+     * @return Value whose key matches the token, ignoring case, or null.
+     */
+    @SuppressWarnings("unchecked")
+    T get(final CharBuffer buffer, final int start, final int end)
+    {
+        for (int slot = hash(buffer, start, end) & mask; keys[slot] != null; slot = slot + 1 & mask)
+            if (matches(buffer, start, end, keys[slot]))
+                return (T)values[slot];
+        return null;
+    }
+
+    /* Case-insensitive hash of a range of characters. */
+    private static int hash(final CharSequence cs, final int start, final int end)
+    {
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + Character.toLowerCase(cs.charAt(i));
+        return h ^ h >>> 16;
+    }
+
+    /* Case-insensitive hash of a range of characters, indexed absolutely. */
+    private static int hash(final CharBuffer buffer, final int start, final int end)
+    {
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + Character.toLowerCase(buffer.get(i));
+        return h ^ h >>> 16;
+    }
+
+    /* Compares a range of the buffer to a key, ignoring case. */
+    private static boolean matches(final CharBuffer buffer, final int start, final int end, final String key)
+    {
+        if (end - start != key.length()) return false;
+        for (int i = start; i < end; i++)
+        {
+            final char a = buffer.get(i), b = key.charAt(i - start);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) return false;
+        }
+        return true;
+    }
+}
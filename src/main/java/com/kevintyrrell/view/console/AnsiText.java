@@ -0,0 +1,143 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.view.console;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a scanner of text which may contain ANSI escape sequences, such as ConsoleColor codes.
+ *
+ * Escape sequences occupy no space in the console window. The scanner measures the
+ * visible width of text, optionally copying it with or without its escape sequences,
+ * in a single pass and without regular expressions.
+ *
+ * Recognized sequences are CSI sequences (ESC, '[', parameters, final byte from '@' to '~')
+ * and two-character escapes (ESC followed by any other character).
+ *
+ * @see ConsoleColor
+ * @since 3.0
+ */
+public final class AnsiText
+{
+    /* Escape character, which begins every sequence. */
+    private static final char ESC = '\033';
+
+    private AnsiText() { }
+
+    /**
+     * @param text Text to measure.
+     * @return Number of visible characters of the text.
+     */
+    public static int width(final CharSequence text)
+    {
+        return width(text, 0, requireNonNull(text).length());
+    }
+
+    /**
+     * @param text Text to measure.
+     * @param start Index at which to begin measuring, inclusive.
+     * @param end Index at which to stop measuring, exclusive.
+     * @return Number of visible characters of the text within the range.
+     */
+    public static int width(final CharSequence text, final int start, final int end)
+    {
+        requireNonNull(text);
+        int width = 0;
+        for (int i = start; i < end; )
+        {
+            final int next = skipEscape(text, i, end);
+            if (next == i)
+            {
+                width++;
+                i++;
+            }
+            else i = next;
+        }
+        return width;
+    }
+
+    /**
+     * @param text Text which may contain escape sequences.
+     * @return Text without any of its escape sequences.
+     */
+    public static String strip(final CharSequence text)
+    {
+        final StringBuilder sb = new StringBuilder(requireNonNull(text).length());
+        try
+        {
+            transfer(text, sb, false);
+        }
+        catch (final IOException e)
+        {
+            throw new UncheckedIOException(e); // StringBuilder does not throw.
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Copies text into an appendable, measuring its visible width in the same pass.
+     *
+     * @param text Text which may contain escape sequences.
+     * @param out Appendable to append to.
+     * @param preserveCodes true to copy escape sequences, false to strip them.
+     * @return Number of visible characters of the text.
+     * @throws IOException If the appendable fails to append.
+     */
+    public static int transfer(final CharSequence text, final Appendable out, final boolean preserveCodes)
+            throws IOException
+    {
+        requireNonNull(out);
+        final int len = requireNonNull(text).length();
+        int width = 0, run = 0; // Start of the current run of visible characters.
+        for (int i = 0; i < len; )
+        {
+            final int next = skipEscape(text, i, len);
+            if (next == i)
+            {
+                width++;
+                i++;
+                continue;
+            }
+            /* Flush visible characters preceding the sequence, then the sequence itself. */
+            out.append(text, run, i);
+            if (preserveCodes) out.append(text, i, next);
+            run = i = next;
+        }
+        out.append(text, run, len);
+        return width;
+    }
+
+    /* Index following the escape sequence which begins at the index, or the index if there is none. */
+    private static int skipEscape(final CharSequence text, int i, final int end)
+    {
+        if (text.charAt(i) != ESC) return i;
+        if (++i >= end) return i;
+        if (text.charAt(i++) != '[') return i; // Two-character escape.
+        /* Parameter and intermediate bytes, until the final byte. */
+        while (i < end)
+        {
+            final char c = text.charAt(i++);
+            if (c >= '@' && c <= '~') break;
+        }
+        return i;
+    }
+}
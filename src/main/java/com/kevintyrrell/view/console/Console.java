@@ -18,8 +18,9 @@
 
 package com.kevintyrrell.view.console;
 
+import com.kevintyrrell.view.CommandTokenizer;
+
 import java.util.Scanner;
-import java.util.regex.Pattern;
 
 /**
  * Defines a
@@ -28,8 +29,8 @@ import java.util.regex.Pattern;
  */
 public class Console
 {
-    /* Expected pattern to split the input on. */
-    final Pattern inputPattern = Pattern.compile("\\s*\\w\\s*");
+    /* Splits each line of input into commands and their arguments. */
+    final CommandTokenizer tokenizer = new CommandTokenizer();
 
     private final Scanner sc = new Scanner(System.in);
 }
@@ -104,6 +104,10 @@ public  enum ConsoleColor
 
     /**
      * Escape sequence which denotes a console color wrapped around a string.
+     *
+     * To measure or strip colored text, prefer AnsiText, which does not require a regex.
+     *
+     * @see AnsiText
      */
     public static final String ESCAPE_COLOR_FORMAT = "\\033\\[(?:\\d;)?\\d+m(.+?)\\033\\[0m";
 
@@ -0,0 +1,126 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell.view.console;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Defines a writer which redraws the console window a frame at a time.
+ *
+ * Each frame is compared line by line to the previously drawn frame. Only lines
+ * which changed are re-written, after moving the cursor to them with ANSI escape
+ * sequences; unchanged lines are never sent to the console. Lines may contain
+ * ConsoleColor codes; colors are reset at the end of every written line.
+ *
+ * @since 3.0
+ */
+public final class FrameWriter
+{
+    /* ANSI control sequences. */
+    private static final String CSI = "\033[", CLEAR_SCREEN = CSI + "2J", CLEAR_LINE = CSI + "K";
+
+    private final Writer out;
+    /* Lines of the previously drawn frame, or null if the screen must be fully redrawn. */
+    private String[] previous;
+    /* Number of lines written, over all frames. */
+    private long linesWritten;
+
+    /**
+     * @param out Writer of the console.
+     */
+    public FrameWriter(final Writer out)
+    {
+        this.out = requireNonNull(out);
+    }
+
+    /**
+     * Draws a frame, re-writing only the lines which differ from the previous frame.
+     *
+     * The cursor is left at the start of the line following the frame.
+     *
+     * @param lines Lines of the frame, from the top of the window.
+     * @throws IOException If the writer fails to write.
+     */
+    public void draw(final List<? extends CharSequence> lines) throws IOException
+    {
+        final String[] frame = new String[requireNonNull(lines).size()];
+        for (int i = 0; i < frame.length; i++)
+            frame[i] = requireNonNull(lines.get(i)).toString();
+
+        if (previous == null)
+        {
+            out.write(CLEAR_SCREEN);
+            previous = new String[0];
+        }
+        for (int i = 0; i < frame.length; i++)
+        {
+            if (i < previous.length && previous[i].equals(frame[i])) continue;
+            moveTo(i);
+            out.write(frame[i]);
+            out.write(ConsoleColor.RESET.code);
+            out.write(CLEAR_LINE);
+            linesWritten++;
+        }
+        /* Erase lines which the previous frame had, but this frame does not. */
+        for (int i = frame.length; i < previous.length; i++)
+        {
+            moveTo(i);
+            out.write(CLEAR_LINE);
+        }
+        moveTo(frame.length);
+        out.flush();
+        previous = frame;
+    }
+
+    /* Moves the cursor to the start of a line, indexed from 0. */
+    private void moveTo(final int line) throws IOException
+    {
+        out.append(CSI).append(Integer.toString(line + 1)).append(";1H");
+    }
+
+    /**
+     * Forces the next frame to redraw the entire window, such as after the window is resized.
+     */
+    public void invalidate()
+    {
+        previous = null;
+    }
+
+    /**
+     * @return Lines of the most recently drawn frame.
+     */
+    public List<String> getFrame()
+    {
+        return previous == null ? List.of() : Collections.unmodifiableList(Arrays.asList(previous));
+    }
+
+    /**
+     * @return Number of lines written to the console, over all frames.
+     */
+    public long getLinesWritten()
+    {
+        return linesWritten;
+    }
+}
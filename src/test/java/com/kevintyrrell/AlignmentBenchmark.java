@@ -0,0 +1,111 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell;
+
+import com.kevintyrrell.view.Alignment;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.join;
+import static java.util.Collections.nCopies;
+
+/**
+ * JMH benchmark comparing the String-building alignment of version 2.0 against appending alignment.
+ *
+ * Run via `main`. Allocation rates are reported by the GC profiler (`gc.alloc.rate.norm`).
+ *
+ * @since 3.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlignmentBenchmark
+{
+    /* Width of a typical table cell. */
+    private static final int WIDTH = 40;
+
+    @Param({ "LEFT", "CENTER", "JUSTIFIED" })
+    public Alignment alignment;
+
+    private final String line = "Spirit of the Eternal Ward";
+    /* Reused row buffer, as a table renderer would hold. */
+    private final StringBuilder row = new StringBuilder(WIDTH);
+
+    @Benchmark public String legacyAlign()
+    {
+        return legacy(alignment, line, WIDTH);
+    }
+
+    @Benchmark public String align()
+    {
+        return alignment.align(line, WIDTH);
+    }
+
+    @Benchmark public void alignTo(final Blackhole bh) throws IOException
+    {
+        row.setLength(0);
+        bh.consume(alignment.alignTo(row, line, WIDTH));
+    }
+
+    /* Alignment as implemented prior to `alignTo`, kept as the baseline. */
+    private static String legacy(final Alignment alignment, final String line, final int width)
+    {
+        final int len = line.length();
+        switch (alignment)
+        {
+            case LEFT: return line.concat(join("", nCopies(width - len, " ")));
+            case RIGHT: return join("", nCopies(width - len, " ")).concat(line);
+            case CENTER:
+                final int spaces = width - len;
+                final String s = join("", nCopies(spaces / 2, " "));
+                return s + line + s + ((spaces & 1) != 0 ? " " : "");
+            default:
+                final String[] words = line.split("\\s+");
+                int left = width - Arrays.stream(words).mapToInt(String::length).sum();
+                final int[] wordSpacing = new int[words.length - 1];
+                Arrays.fill(wordSpacing, left / (words.length - 1));
+                left %= words.length - 1;
+                final int mid = words.length / 2;
+                for (int i = 0; i < left; i++)
+                    wordSpacing[mid + (i + 1) / 2 - (i + 1) * (i & 1)]++;
+                final StringBuilder builder = new StringBuilder(width);
+                for (int i = 0; i < wordSpacing.length; i++)
+                    builder.append(words[i]).append(join("", nCopies(wordSpacing[i], " ")));
+                return builder.append(words[words.length - 1]).toString();
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(AlignmentBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell;
+
+import com.kevintyrrell.api.ApiServer;
+import com.kevintyrrell.api.SharedTracker;
+import com.kevintyrrell.model.diablo.rune.RuneMap;
+import com.kevintyrrell.model.diablo.runeword.Runeword;
+import com.kevintyrrell.model.diablo.runeword.RunewordFilter;
+import com.kevintyrrell.model.diablo.runeword.RunewordLoader;
+import com.kevintyrrell.model.util.SaveScheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load-tests the HTTP API, reporting throughput and latency percentiles.
+ *
+ * Each client thread issues a mix of nine sorted listings to every pair of add and toss requests.
+ * When no port is given, an API is served in-process over empty runes, saving under `loadtest/`.
+ *
+ * Usage: ApiLoadClient [port] [threads] [seconds]
+ *
+ * @since 3.0
+ */
+public final class ApiLoadClient
+{
+    /* Requests issued per cycle of the mix: nine listings, one add, one toss. */
+    private static final int MIX = 11;
+
+    public static void main(final String[] args) throws Exception
+    {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        final int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        final long seconds = args.length > 2 ? Long.parseLong(args[2]) : 10;
+
+        ApiServer server = null;
+        SaveScheduler saver = null;
+        if (port == 0)
+        {
+            final Map<String, Runeword> runewords = new RunewordLoader().stringMap();
+            final RuneMap runes = new RuneMap();
+            saver = new SaveScheduler("loadtest/", 1, TimeUnit.SECONDS);
+            server = new ApiServer(new SharedTracker(runes,
+                    new RunewordFilter(new ArrayList<>(runewords.values()), runes), runewords, saver, "loadtest/"),
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                    Runtime.getRuntime().availableProcessors());
+        }
+        final String base = "http://127.0.0.1:" + (server == null ? port : server.getPort());
+
+        final AtomicLong failures = new AtomicLong();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final List<Future<long[]>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+            results.add(pool.submit(() -> run(base, deadline, failures)));
+
+        long[] latencies = new long[0];
+        for (final Future<long[]> result : results)
+        {
+            final long[] l = result.get();
+            final int n = latencies.length;
+            latencies = Arrays.copyOf(latencies, n + l.length);
+            System.arraycopy(l, 0, latencies, n, l.length);
+        }
+        pool.shutdown();
+        if (server != null) server.close();
+        if (saver != null) saver.close();
+
+        Arrays.sort(latencies);
+        System.out.printf("%d requests, %d failed, %d threads, %ds%n",
+                latencies.length, failures.get(), threads, seconds);
+        System.out.printf("Throughput: %.1f req/s%n", latencies.length / (double)seconds);
+        System.out.printf("Latency p50: %.3f ms, p99: %.3f ms, max: %.3f ms%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 1.0));
+    }
+
+    /* Issues the mix until the deadline, returning the latency of each request in nanoseconds. */
+    private static long[] run(final String base, final long deadline, final AtomicLong failures) throws IOException
+    {
+        long[] latencies = new long[1024];
+        int n = 0;
+        for (int i = 0; System.nanoTime() < deadline; i = (i + 1) % MIX)
+        {
+            final long start = System.nanoTime();
+            final int status;
+            if (i < MIX - 2) status = request("GET", base + "/runewords?sort=progress", null);
+            else if (i == MIX - 2) status = request("POST", base + "/runes/add", "el");
+            else status = request("POST", base + "/runes/toss", "el");
+            if (n == latencies.length) latencies = Arrays.copyOf(latencies, n * 2);
+            latencies[n++] = System.nanoTime() - start;
+            if (status != 200) failures.incrementAndGet();
+        }
+        return Arrays.copyOf(latencies, n);
+    }
+
+    /* Sends the request and drains the response, returning its status code. */
+    private static int request(final String method, final String url, final String body) throws IOException
+    {
+        final HttpURLConnection connection = (HttpURLConnection)new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null)
+        {
+            connection.setDoOutput(true);
+            try (final OutputStream out = connection.getOutputStream())
+            {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        final int status = connection.getResponseCode();
+        try (final InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream())
+        {
+            in.readAllBytes();
+        }
+        return status;
+    }
+
+    /* Value at the percentile of sorted nanoseconds, in milliseconds. */
+    private static double percentile(final long[] sorted, final double percentile)
+    {
+        if (sorted.length == 0) return 0;
+        final int i = (int)Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, i)] / 1e6;
+    }
+}
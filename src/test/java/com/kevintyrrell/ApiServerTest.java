@@ -0,0 +1,132 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell;
+
+import com.kevintyrrell.api.ApiServer;
+import com.kevintyrrell.api.SharedTracker;
+import com.kevintyrrell.model.diablo.rune.Rune;
+import com.kevintyrrell.model.diablo.rune.RuneMap;
+import com.kevintyrrell.model.diablo.runeword.Runeword;
+import com.kevintyrrell.model.diablo.runeword.RunewordFilter;
+import com.kevintyrrell.model.diablo.runeword.RunewordLoader;
+import com.kevintyrrell.model.util.SaveScheduler;
+import com.kevintyrrell.model.util.Saveable;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit testing class.
+ *
+ * @since 3.0
+ */
+public class ApiServerTest
+{
+    /* Sub-directory of the save directory used exclusively by tests. */
+    private static final String TEST_DIRECTORY = "test/";
+
+    @After public void tearDown() throws IOException
+    {
+        final Path dir = Paths.get(Saveable.SAVE_DIRECTORY, TEST_DIRECTORY);
+        if (!Files.exists(dir)) return;
+        try (final Stream<Path> paths = Files.walk(dir))
+        {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test public void apiServerTest1() throws IOException
+    {
+        final Map<String, Runeword> runewords = new RunewordLoader().stringMap();
+        final RuneMap runes = new RuneMap();
+        final RunewordFilter filter = new RunewordFilter(new ArrayList<>(runewords.values()), runes);
+        try (final SaveScheduler saver = new SaveScheduler(TEST_DIRECTORY, 1, TimeUnit.HOURS);
+             final ApiServer server = new ApiServer(new SharedTracker(runes, filter, runewords, saver, TEST_DIRECTORY),
+                     new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2))
+        {
+            final String base = "http://127.0.0.1:" + server.getPort();
+            final String added = request("POST", base + "/runes/add", "tir2 ral");
+            assertTrue(added.startsWith("200 "));
+            assertTrue(added.contains("\"Tir\":2"));
+            assertTrue(added.contains("\"Ral\":1"));
+            assertTrue(request("POST", base + "/runes/toss", "zod").startsWith("400 "));
+            assertTrue(request("POST", base + "/runes/toss", "tir2 ral").startsWith("200 {}"));
+            request("POST", base + "/runes/add", "tir2 ral");
+            assertTrue(request("POST", base + "/runes/add", "foo").contains("Unrecognized Rune: foo"));
+            assertTrue(request("GET", base + "/runes/add", null).startsWith("405 "));
+
+            final String leaf = request("GET", base + "/runewords/leaf", null);
+            assertTrue(leaf.startsWith("200 "));
+            assertTrue(leaf.contains("\"progress\":1.0"));
+            assertTrue(request("GET", base + "/runewords/nope", null).startsWith("404 "));
+            assertTrue(request("GET", base + "/runewords?sort=nope", null).startsWith("400 "));
+
+            final String sorted = request("GET", base + "/runewords?sort=progress", null);
+            assertTrue(sorted.startsWith("200 [{"));
+            assertTrue(sorted.indexOf("\"Leaf\"") > sorted.lastIndexOf("},{")); // Ascending progress.
+            assertTrue(request("POST", base + "/filters/leaf", "").contains("\"filtered\":true"));
+            assertFalse(request("GET", base + "/runewords?sort=progress", null).contains("\"Leaf\""));
+            assertTrue(request("POST", base + "/filters/nope", "").startsWith("400 "));
+            final StringBuilder large = new StringBuilder();
+            while (large.length() < 8192) large.append("tir ");
+            assertTrue(request("POST", base + "/runes/add", large.toString()).startsWith("413 "));
+            assertEquals(2, saver.getBacklog());
+        }
+        assertEquals(new RuneMap(Stream.of(Rune.TIR, Rune.TIR, Rune.RAL)).getRunes(), runes.getRunes());
+        assertTrue(Files.exists(Saveable.pathOf(TEST_DIRECTORY + runes.getFileName(), Saveable.BINARY_EXTENSION)));
+    }
+
+    /* Status code and body of the response to the request. */
+    private static String request(final String method, final String url, final String body) throws IOException
+    {
+        final HttpURLConnection connection = (HttpURLConnection)new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null)
+        {
+            connection.setDoOutput(true);
+            try (final OutputStream out = connection.getOutputStream())
+            {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        final int status = connection.getResponseCode();
+        try (final InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream())
+        {
+            return status + " " + new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -19,15 +19,35 @@
 package com.kevintyrrell;
 
 import com.kevintyrrell.lang.Locale;
+import com.kevintyrrell.lang.LocaleContext;
+import com.kevintyrrell.lang.LocaleKey;
+import com.kevintyrrell.lang.Template;
+import com.kevintyrrell.model.diablo.rune.Rune;
+import com.kevintyrrell.model.diablo.rune.RuneMap;
+import com.kevintyrrell.model.diablo.runeword.RunewordFilter;
+import com.kevintyrrell.model.diablo.runeword.RunewordLoader;
+import com.kevintyrrell.model.diablo.runeword.RunewordSorter;
 import com.kevintyrrell.model.util.CachedValue;
 import com.kevintyrrell.view.Alignment;
+import com.kevintyrrell.view.BatchMode;
+import com.kevintyrrell.view.Command;
+import com.kevintyrrell.view.CommandTokenizer;
 import com.kevintyrrell.view.Paragraph;
+import com.kevintyrrell.view.RunewordTable;
+import com.kevintyrrell.view.console.AnsiText;
 import com.kevintyrrell.view.console.ConsoleColor;
+import com.kevintyrrell.view.console.FrameWriter;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -120,10 +140,201 @@ public class ConsoleTest
         assertEquals("PANDA", a4.align("PANDA", 5));
     }
 
+    @Test public void alignmentTest1() throws IOException
+    {
+        assertEquals("a   b   c", Alignment.JUSTIFIED.align("a  b c", 9));
+        assertEquals("a   b    c", Alignment.JUSTIFIED.align(" a b\tc ", 10));
+        assertEquals(200, Alignment.CENTER.align("PANDA", 200).length());
+        final StringWriter out = new StringWriter();
+        Alignment.RIGHT.alignTo(out, new StringBuilder("PANDA"), 7).append('|');
+        assertEquals("  PANDA|", out.toString());
+        assertEquals(">PANDA  ", Alignment.LEFT.align(new StringBuilder(">"), "PANDA", 7).toString());
+    }
+
+    @Test public void paragraphTest1()
+    {
+        final Paragraph p = new Paragraph("aaa bb cc ddddd\n\nabcdefghij", 6, Alignment.LEFT);
+        assertEquals(Arrays.asList("aaa bb", "cc    ", "ddddd ", "      ", "abcdef", "ghij  "), p.getLines());
+        assertSame(p.getLines(), new Paragraph("aaa bb cc ddddd\n\nabcdefghij", 6, Alignment.LEFT).getLines());
+        assertEquals(Arrays.asList("a    b", "ccc   "), new Paragraph("a b ccc", 6, Alignment.JUSTIFIED).getLines());
+    }
+
+    @Test public void paragraphTest2()
+    {
+        /* Greedy leaves the second line nearly empty; minimum raggedness balances the lines. */
+        final String content = "aaa bb cc ddddd";
+        assertEquals(Arrays.asList("aaa bb", "cc    ", "ddddd "), new Paragraph(content, 6, Alignment.LEFT).getLines());
+        assertEquals(Arrays.asList("aaa   ", "bb cc ", "ddddd "),
+                new Paragraph(content, 6, Alignment.LEFT, true).getLines());
+    }
+
+    @Test public void runewordTableTest1() throws IOException
+    {
+        final RunewordLoader loader = new RunewordLoader();
+        final RuneMap runes = new RuneMap(Stream.of(Rune.TIR, Rune.RAL));
+        final StringWriter out = new StringWriter();
+        new RunewordTable(runes).render(out, Stream.of(
+                loader.stringMap().get("leaf"), loader.stringMap().get("breath_of_the_dying")));
+
+        final String[] lines = out.toString().split(System.lineSeparator());
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("Runeword"));
+        assertTrue(lines[2].startsWith("Leaf "));
+        assertTrue(lines[2].endsWith("100.0%"));
+        assertTrue(lines[3].endsWith("  0.0%"));
+        for (final String line : lines)
+            assertEquals(lines[1].length(), line.length());
+    }
+
+    @Test public void runewordTableTest2() throws IOException
+    {
+        /* Three Tal cube into the Ral which, with a Tir, completes Leaf. */
+        final RunewordLoader loader = new RunewordLoader();
+        final RuneMap runes = new RuneMap(Stream.of(Rune.TIR, Rune.TAL, Rune.TAL, Rune.TAL));
+        final RunewordFilter filter = new RunewordFilter(Collections.singleton(loader.fromString("leaf")), runes);
+        final RunewordSorter sorter = new RunewordSorter(runes);
+        filter.setProgressThreshold(0.0f);
+        final StringWriter out = new StringWriter();
+        new RunewordTable(runes).render(out, filter, sorter);
+        assertFalse(out.toString().split(System.lineSeparator())[2].endsWith("100.0%"));
+
+        out.getBuffer().setLength(0);
+        sorter.setCountingUpgrades(true);
+        new RunewordTable(runes).render(out, filter, sorter);
+        assertTrue(out.toString().split(System.lineSeparator())[2].endsWith("100.0%"));
+    }
+
+    @Test public void frameWriterTest1() throws IOException
+    {
+        final StringWriter out = new StringWriter();
+        final FrameWriter frames = new FrameWriter(out);
+        frames.draw(Arrays.asList("title", "a", "b"));
+        assertEquals(3, frames.getLinesWritten());
+        out.getBuffer().setLength(0);
+
+        frames.draw(Arrays.asList("title", new StringBuilder("c")));
+        /* Only the second line is re-written, the third is erased, and the cursor is parked below. */
+        final String reset = ConsoleColor.RESET.code;
+        assertEquals("\033[2;1Hc" + reset + "\033[K\033[3;1H\033[K\033[3;1H", out.toString());
+        assertEquals(4, frames.getLinesWritten());
+        assertEquals(Arrays.asList("title", "c"), frames.getFrame());
+    }
+
+    @Test public void ansiTextTest1() throws IOException
+    {
+        final String plain = "Hello; [0World!", colored = ConsoleColor.RED_BOLD.wrap(plain) + "\033[1A";
+        assertEquals(plain.length(), AnsiText.width(colored));
+        assertEquals(plain, AnsiText.strip(colored));
+        final StringBuilder sb = new StringBuilder();
+        assertEquals(plain.length(), AnsiText.transfer(colored, sb, true));
+        assertEquals(colored, sb.toString());
+    }
+
+    @Test public void ansiTextTest2()
+    {
+        final String panda = ConsoleColor.CYAN.wrap("PANDA");
+        assertEquals(panda + "   ", Alignment.LEFT.align(panda, 8));
+        assertEquals(" " + panda + " ", Alignment.CENTER.align(panda, 7));
+        assertEquals(panda + "  " + panda, Alignment.JUSTIFIED.align(panda + " " + panda, 12));
+        assertSame(panda, Alignment.RIGHT.align(panda, 5));
+    }
+
+    @Test public void batchModeTest1() throws IOException
+    {
+        final RuneMap runes = new RuneMap(Stream.of(Rune.EL));
+        final BatchMode batch = new BatchMode(runes);
+        assertFalse(batch.run(new StringReader("add tir ORT3\n\n  toss el2\ntoss ort2 el\nadd zod0 xyz\nsort name\nfly")));
+        assertEquals(6, batch.getCommandCount());
+        assertEquals(2, batch.getAppliedCount());
+        assertEquals(Arrays.asList(
+                "Line 3: Insufficient runes to toss: El Rune",
+                "Line 5: Unrecognized Rune: zod0",
+                "Line 5: Unrecognized Rune: xyz",
+                "Line 6: Command cannot be used in batch mode: sort",
+                "Line 7: Unrecognized Command: fly"), batch.getErrors());
+        assertEquals(new RuneMap(Stream.of(Rune.TIR, Rune.ORT)).getRunes(), runes.getRunes());
+        assertEquals("Applied 2 of 6 command(s)", batch.summary());
+    }
+
+    @Test public void batchModeTest2() throws IOException
+    {
+        final RuneMap runes = new RuneMap();
+        runes.addRunes(Rune.TIR, Integer.MAX_VALUE - 1);
+        final BatchMode batch = new BatchMode(runes);
+        assertFalse(batch.run(new StringReader("add tir2\nadd tir")));
+        assertEquals(Collections.singletonList("Line 1: Too many runes to add: Tir Rune"), batch.getErrors());
+        assertEquals(Integer.MAX_VALUE, runes.count(Rune.TIR));
+    }
+
+    @Test public void commandTokenizerTest1()
+    {
+        final CharBuffer input = CharBuffer.wrap("  ADD tir Ort12\r\n\nfilter\n");
+        final CommandTokenizer tokens = new CommandTokenizer().reset(input);
+        assertTrue(tokens.next());
+        assertSame(Command.ADD, tokens.command(LocaleContext.DEFAULT));
+        assertTrue(tokens.next());
+        assertSame(Rune.TIR, tokens.rune());
+        assertEquals(1, tokens.quantity());
+        assertTrue(tokens.next());
+        assertSame(Rune.ORT, tokens.rune());
+        assertEquals(12, tokens.quantity());
+        assertEquals("Ort12", tokens.slice().toString());
+        assertFalse(tokens.next());
+
+        assertTrue(tokens.nextLine());
+        assertFalse(tokens.next());
+        assertTrue(tokens.nextLine());
+        assertTrue(tokens.next());
+        assertSame(Command.FILTER, tokens.command(LocaleContext.DEFAULT));
+        assertNull(tokens.rune());
+        assertFalse(tokens.nextLine());
+        assertEquals(0, input.position());
+    }
+
+    @Test public void commandTokenizerTest2()
+    {
+        final CommandTokenizer tokens = new CommandTokenizer().reset("ort0 or 3 ort1234567890 adds");
+        while (tokens.next())
+        {
+            assertNull(tokens.rune());
+            assertNull(tokens.command(LocaleContext.DEFAULT));
+        }
+    }
+
     @Test public void consoleTest7()
     {
         final String test = "My name is Kevin and I am a programmer.";
         final Pattern p = Pattern.compile("^\\w+");
         p.splitAsStream(test).forEach(str -> System.out.println("|" + str + "|"));
     }
+
+    @Test public void localeContextTest1()
+    {
+        final LocaleContext ctx = new LocaleContext(Locale.EN);
+        assertEquals("RUNE COLLECTION", ctx.get("runes/title"));
+        assertEquals("Low", ctx.get("runes/tiers/2"));
+        assertEquals(Locale.get("commands/add/hint").get(), ctx.get("commands/add/hint"));
+        assertSame(ctx, ctx.withLocale(Locale.EN));
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void localeContextTest2()
+    {
+        LocaleContext.DEFAULT.get("commands/add");
+    }
+
+    @Test public void templateTest1()
+    {
+        final Template t = LocaleContext.DEFAULT.template(LocaleKey.SPLASH_TITLE);
+        assertSame(t, Locale.EN.template(LocaleKey.SPLASH_TITLE));
+        assertEquals(3, t.getArgumentCount());
+        assertEquals(String.format(Locale.EN.lookup(LocaleKey.SPLASH_TITLE), 3, 0, 1), t.format(3, 0, 1));
+        assertEquals("x: Unrecognized Rune: Zod", Locale.EN.template(LocaleKey.COMMANDS_ADD_EX_DNE)
+                .render(new StringBuilder("x: "), "Zod").toString());
+        assertEquals("100% done", new Template("%s%% done").format(100));
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void templateTest2()
+    {
+        new Template("%s and %s").format("one");
+    }
 }
@@ -0,0 +1,114 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell;
+
+import com.kevintyrrell.daemon.Daemon;
+import com.kevintyrrell.daemon.DaemonClient;
+import com.kevintyrrell.model.diablo.rune.Rune;
+import com.kevintyrrell.model.diablo.rune.RuneMap;
+import com.kevintyrrell.model.diablo.runeword.RunewordLoader;
+import com.kevintyrrell.model.profile.ProfileRepository;
+import com.kevintyrrell.model.util.Saveable;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit testing class.
+ *
+ * @since 3.0
+ */
+public class DaemonTest
+{
+    /* Sub-directory of the save directory used exclusively by tests. */
+    private static final String TEST_DIRECTORY = "test/";
+
+    @After public void tearDown() throws IOException
+    {
+        final Path dir = Paths.get(Saveable.SAVE_DIRECTORY, TEST_DIRECTORY);
+        if (!Files.exists(dir)) return;
+        try (final Stream<Path> paths = Files.walk(dir))
+        {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test public void daemonTest1() throws IOException
+    {
+        final ProfileRepository repo = new ProfileRepository(TEST_DIRECTORY + "profiles",
+                new ArrayList<>(new RunewordLoader().stringMap().values()), 4);
+        try (final Daemon daemon = new Daemon(repo, TEST_DIRECTORY + "daemon"))
+        {
+            final DaemonClient client = new DaemonClient(TEST_DIRECTORY + "daemon");
+            final StringBuilder reply = new StringBuilder();
+            client.send("alice", new StringReader("add tir ral\ntoss zod\n"), reply);
+            assertTrue(reply.toString().contains("Line 2: Insufficient runes to toss: Zod Rune"));
+            assertTrue(reply.toString().contains("Leaf "));
+            assertTrue(reply.toString().contains("Applied 1 of 2 command(s)"));
+
+            reply.setLength(0);
+            client.send("alice", new StringReader(""), reply);
+            assertTrue(reply.toString().contains("Applied 0 of 0 command(s)"));
+            assertEquals(new RuneMap(Stream.of(Rune.TIR, Rune.RAL)).getRunes(), repo.get("alice").getRunes().getRunes());
+            assertFalse(repo.get("alice").hasUnsavedChanges());
+        }
+        assertFalse(Files.exists(Saveable.pathOf(TEST_DIRECTORY + "daemon", Daemon.PORT_EXTENSION)));
+    }
+
+    @Test public void daemonTest2() throws IOException
+    {
+        final ProfileRepository repo = new ProfileRepository(TEST_DIRECTORY + "profiles", new ArrayList<>(), 4);
+        try (final Daemon daemon = new Daemon(repo, TEST_DIRECTORY + "daemon"))
+        {
+            final Path portFile = Saveable.pathOf(TEST_DIRECTORY + "daemon", Daemon.PORT_EXTENSION);
+            if (portFile.getFileSystem().supportedFileAttributeViews().contains("posix"))
+                assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(portFile));
+
+            /* Requests without the token are closed without a reply or any change. */
+            for (final String token : new String[] { "", "guess", Files.readAllLines(portFile).get(1) + "0" })
+            {
+                try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort()))
+                {
+                    final OutputStream out = socket.getOutputStream();
+                    out.write((token + "\nalice\nadd zod\n").getBytes(StandardCharsets.UTF_8));
+                    socket.shutdownOutput();
+                    final InputStream in = socket.getInputStream();
+                    assertEquals(-1, in.read());
+                }
+            }
+            assertTrue(repo.get("alice").getRunes().getRunes().isEmpty());
+        }
+    }
+}
@@ -18,15 +18,31 @@
 
 package com.kevintyrrell;
 
+import com.kevintyrrell.model.diablo.rune.ConcurrentRuneMap;
+import com.kevintyrrell.model.diablo.rune.CubePlanner;
+import com.kevintyrrell.model.diablo.rune.PackedRuneStore;
 import com.kevintyrrell.model.diablo.rune.Rune;
 import com.kevintyrrell.model.diablo.rune.RuneMap;
+import com.kevintyrrell.model.diablo.rune.RuneSnapshot;
+import com.kevintyrrell.model.diablo.rune.WhatIfRuneMap;
 import com.kevintyrrell.model.diablo.runeword.Runeword;
+import com.kevintyrrell.model.diablo.runeword.RunewordCatalog;
 import com.kevintyrrell.model.diablo.runeword.RunewordLoader;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
@@ -113,4 +129,274 @@ public class RuneMapTest
         expected.put(AMN, 1);
         assertEquals(expected, r1.tossableRunes(rws));
     }
+
+    @Test public void saveTest1() throws Exception
+    {
+        r1.addRunes(Stream.of(ETH, KO, KO, ZOD));
+        final byte[] bytes = r1.toBytes();
+        r2.addRunes(TIR, 3);
+        r2.fromBytes(bytes);
+        assertEquals(r1.getRunes(), r2.getRunes());
+        assertEquals(r1.appraise(), r2.appraise(), 0.0);
+    }
+
+    @Test public void saveTest2() throws Exception
+    {
+        /* Fixture was written through Java serialization, before the binary save format existed. */
+        r1.addRunes(Stream.of(ETH, KO, KO, ZOD));
+        try (final ObjectInputStream ois = new ObjectInputStream(
+                RuneMapTest.class.getResourceAsStream("/legacy/RuneMap.ser")))
+        {
+            final RuneMap legacy = (RuneMap)ois.readObject();
+            assertEquals(r1.getRunes(), legacy.getRunes());
+            assertEquals(r1.appraise(), legacy.appraise(), 0.0);
+            r2.fromBytes(legacy.toBytes());
+            assertEquals(r1.getRunes(), r2.getRunes());
+        }
+    }
+
+    @Test public void moveRunesTest1()
+    {
+        r1.moveRunes(SOL, 3);
+        r1.moveRunes(SOL, -2);
+        assertEquals(Integer.valueOf(1), r1.getRunes().get(SOL));
+        r1.moveRunes(SOL, -1);
+        assertTrue(r1.getRunes().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void moveRunesTest2()
+    {
+        r1.tossRunes(SOL, 1);
+    }
+
+    @Test public void applyDeltaTest1()
+    {
+        r1.addRunes(Stream.of(EL, EL, TIR));
+        final int[] delta = new int[Rune.extension.size()];
+        delta[EL.ordinal()] = -2;
+        delta[ZOD.ordinal()] = 1;
+        r1.applyDelta(delta);
+        assertEquals(new RuneMap(Stream.of(TIR, ZOD)).getRunes(), r1.getRunes());
+        delta[EL.ordinal()] = -1;
+        try
+        {
+            r1.applyDelta(delta);
+            fail();
+        }
+        catch (final IllegalArgumentException ignored) { }
+        assertEquals(new RuneMap(Stream.of(TIR, ZOD)).getRunes(), r1.getRunes());
+    }
+
+    @Test public void packedRuneStoreTest1()
+    {
+        final Runeword grief = new RunewordLoader().stringMap().get("grief");
+        final PackedRuneStore store = new PackedRuneStore(4);
+        r1.addRunes(Stream.of(ETH, TIR, TIR, LO, MAL));
+        store.set(2, r1);
+        store.moveRunes(3, ETH, 2);
+        store.moveRunes(3, ETH, -1);
+
+        final PackedRuneStore.Cursor cursor = store.cursor();
+        assertEquals(r1.getRunes(), cursor.moveTo(2).getRunes());
+        assertEquals(r1.appraise(), cursor.appraise(), 1e-9);
+        assertEquals(r1.progressTowards(grief), cursor.progressTowards(grief), 1e-9);
+        assertEquals(1, cursor.moveTo(3).count(ETH));
+        assertEquals(0.0, cursor.moveTo(0).progressTowards(grief), 0.0);
+        store.clear(2);
+        assertTrue(cursor.moveTo(2).getRunes().isEmpty());
+        assertEquals(0.0, cursor.appraise(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void packedRuneStoreTest2()
+    {
+        new PackedRuneStore(1).moveRunes(0, ZOD, -1);
+    }
+
+    /* Threads which contend in each concurrency test. */
+    private static final int THREADS = 8;
+
+    /* Runs the task on every thread at once, returning each result. */
+    private static <T> List<T> race(final Callable<T> task) throws Exception
+    {
+        final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<T>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++)
+            futures.add(pool.submit(() ->
+            {
+                start.await();
+                return task.call();
+            }));
+        start.countDown();
+        final List<T> results = new ArrayList<>();
+        for (final Future<T> future : futures)
+            results.add(future.get(30, TimeUnit.SECONDS));
+        pool.shutdown();
+        return results;
+    }
+
+    @Test public void concurrentRuneMapTest1() throws Exception
+    {
+        /* Lost updates: every increment of the same rune must land. */
+        final ConcurrentRuneMap runes = new ConcurrentRuneMap();
+        race(() ->
+        {
+            for (int i = 0; i < 10_000; i++)
+                runes.addRunes(TIR, 1);
+            return null;
+        });
+        assertEquals(THREADS * 10_000, runes.count(TIR));
+        assertEquals(THREADS * 10_000, runes.snapshot().count(TIR));
+        assertTrue(runes.getUnsavedChanges().get());
+    }
+
+    @Test public void concurrentRuneMapTest2() throws Exception
+    {
+        /* Tosses race to empty the rune; exactly as many succeed as there were runes. */
+        final ConcurrentRuneMap runes = new ConcurrentRuneMap(new RuneMap(Stream.of(EL, EL)));
+        runes.addRunes(EL, 49_998);
+        final int tossed = race(() ->
+        {
+            int n = 0;
+            try
+            {
+                while (true)
+                {
+                    runes.tossRunes(EL, 1);
+                    n++;
+                }
+            }
+            catch (final IllegalArgumentException e)
+            {
+                return n;
+            }
+        }).stream().mapToInt(Integer::intValue).sum();
+        assertEquals(50_000, tossed);
+        assertEquals(0, runes.count(EL));
+        assertTrue(runes.getRunes().isEmpty());
+    }
+
+    @Test public void concurrentRuneMapTest3() throws Exception
+    {
+        /* One writer adds Tir then Ral; a consistent snapshot never holds more Ral than Tir. */
+        final ConcurrentRuneMap runes = new ConcurrentRuneMap();
+        final AtomicInteger torn = new AtomicInteger(), turn = new AtomicInteger();
+        race(() ->
+        {
+            if (turn.getAndIncrement() == 0)
+                for (int i = 0; i < 20_000; i++)
+                {
+                    runes.addRunes(TIR, 1);
+                    runes.addRunes(RAL, 1);
+                }
+            else for (int i = 0; i < 2_000; i++)
+            {
+                final RuneSnapshot snapshot = runes.snapshot();
+                final int diff = snapshot.count(TIR) - snapshot.count(RAL);
+                if (diff != 0 && diff != 1) torn.incrementAndGet();
+            }
+            return null;
+        });
+        assertEquals(0, torn.get());
+        assertEquals(1.0, runes.progressTowards(new RuneMap(Stream.of(TIR, RAL))), 0);
+    }
+
+    @Test public void snapshotTest1()
+    {
+        final RuneSnapshot empty = r1.snapshot();
+        assertSame(empty, r1.snapshot());
+        assertEquals(0, empty.getVersion());
+
+        r1.addRunes(Stream.of(TIR, TIR, RAL));
+        final RuneSnapshot added = r1.snapshot();
+        assertEquals(1, added.getVersion());
+        assertTrue(empty.getRunes().isEmpty());
+        assertEquals(0, empty.appraise(), 0);
+
+        try
+        {
+            r1.tossRunes(RAL, 2);
+            fail();
+        }
+        catch (final IllegalArgumentException e)
+        {
+            assertSame(added, r1.snapshot()); // Failed changes publish no version.
+        }
+        r1.tossRunes(TIR, 1);
+        assertEquals(2, r1.getVersion());
+        assertEquals(2, added.count(TIR));
+        assertEquals(1, r1.count(TIR));
+        assertEquals(added.getRunes(), RuneSnapshot.copyOf(added, 0).getRunes());
+    }
+
+    @Test public void whatIfRuneMapTest1()
+    {
+        final RunewordCatalog catalog = new RunewordCatalog(new RunewordLoader().stringMap().values());
+        r1.addRunes(Stream.of(ITH, TIR, TIR, SOL, SHAEL));
+        final double[] baseProgress = catalog.progress(r1);
+
+        final WhatIfRuneMap whatIf = new WhatIfRuneMap(r1).with(BER, 1).with(JAH, 1).with(TIR, -1);
+        r1.addRunes(ZOD, 1); // Overlays bind to the base as of their creation.
+        r2.addRunes(Stream.of(ITH, TIR, SOL, SHAEL, BER, JAH));
+
+        assertEquals(r2.getRunes(), whatIf.getRunes());
+        assertEquals(r2.appraise(), whatIf.appraise(), 1e-9);
+        assertEquals("{Tir=-1, Ber=+1, Jah=+1}", whatIf.toString());
+        final double[] progress = whatIf.progress(catalog, baseProgress);
+        assertArrayEquals(catalog.progress(r2), progress, 0.0);
+        for (final Runeword rw : catalog.getRunewords())
+            if (rw.count(BER) == 0 && rw.count(JAH) == 0 && rw.count(TIR) == 0)
+                assertEquals(baseProgress[rw.getId()], progress[rw.getId()], 0.0);
+        assertEquals(1.0, progress[new RunewordLoader().fromString("enigma").getId()], 0.0);
+        assertEquals(0, whatIf.getBase().count(ZOD));
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void whatIfRuneMapTest2()
+    {
+        new WhatIfRuneMap(r1).with(TIR, 1).with(TIR, -2);
+    }
+
+    @Test public void cubePlannerTest1()
+    {
+        r1.addRunes(EL, 10);
+        r1.addRunes(ORT, 3);
+        final CubePlanner planner = new CubePlanner(r1);
+        r1.addRunes(ZOD, 1); // Planners bind to the runes as of their creation.
+
+        final CubePlanner.Plan tir = planner.plan(new RuneMap(Stream.of(TIR, EL)));
+        assertEquals("[3 El -> Eld x3, 3 Eld -> Tir x1]", tir.toString());
+        assertEquals(4, tir.getTransmutations());
+        assertEquals(0, tir.getGems());
+
+        final CubePlanner.Plan thul = planner.plan(new RuneMap(Stream.of(THUL)));
+        assertEquals(1, thul.getGems());
+        assertEquals(THUL, thul.getUpgrades().get(0).getOutput());
+        assertTrue(planner.plan(new RuneMap(Stream.of(ORT, EL))).getUpgrades().isEmpty());
+        assertNull(planner.plan(new RuneMap(Stream.of(NEF, EL, EL))));
+        assertNull(planner.plan(new RuneMap(Stream.of(ZOD))));
+        assertEquals(2, CubePlanner.inputsPerUpgrade(PUL));
+        assertEquals(3, CubePlanner.inputsPerUpgrade(LEM));
+    }
+
+    @Test public void cubePlannerTest2()
+    {
+        /* Three Tal may be kept, or upgraded into a Ral, which is worth more. */
+        r1.addRunes(TAL, 3);
+        final RuneMap target = new RuneMap(Stream.of(TAL, RAL));
+        final CubePlanner planner = new CubePlanner(r1);
+        final double kept = r1.progressTowards(target), upgraded = 1 / RAL.getRarity() / target.appraise();
+        assertTrue(upgraded > kept);
+        assertEquals(upgraded, planner.effectiveProgress(target), 1e-12);
+        assertNull(planner.plan(target));
+
+        r1.addRunes(TAL, 1);
+        assertEquals(1.0, new CubePlanner(r1).effectiveProgress(target), 0.0);
+        assertEquals(0.0, new CubePlanner(r2).effectiveProgress(target), 0.0);
+
+        /* Effective progress is never less than progress, for every runeword. */
+        r1.addRunes(Stream.of(EL, EL, ELD, ELD, ELD, ETH, SOL, SOL, PUL, PUL, UM, LEM, LEM, LEM));
+        final CubePlanner planned = new CubePlanner(r1);
+        for (final Runeword rw : new RunewordLoader().stringMap().values())
+            assertTrue(planned.effectiveProgress(rw) >= r1.progressTowards(rw));
+    }
 }
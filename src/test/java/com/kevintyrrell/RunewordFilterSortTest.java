@@ -21,6 +21,8 @@ package com.kevintyrrell;
 import com.kevintyrrell.model.diablo.ItemType;
 import com.kevintyrrell.model.diablo.rune.Rune;
 import com.kevintyrrell.model.diablo.rune.RuneMap;
+import com.kevintyrrell.model.diablo.runeword.FilterOverlay;
+import com.kevintyrrell.model.diablo.runeword.RunewordCatalog;
 import com.kevintyrrell.model.diablo.runeword.RunewordLoader;
 import com.kevintyrrell.model.diablo.runeword.RunewordSorter;
 import com.kevintyrrell.model.diablo.runeword.Runeword;
@@ -28,6 +30,9 @@ import com.kevintyrrell.model.diablo.runeword.RunewordFilter;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.ObjectInputStream;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
@@ -170,4 +175,117 @@ public class RunewordFilterSortTest
                 })
                 .forEach(e -> System.out.printf("%s [%s]\n", e.getName(), e.getWord()));
     }
+
+    @Test public void runewordFilterSortTest10() throws Exception
+    {
+        filter.filter(ItemType.POLEARM);
+        filter.filter(loader.fromString("enigma"));
+        filter.setProgressThreshold(0.5f);
+        final byte[] bytes = filter.toBytes();
+
+        final RunewordFilter restored = new RunewordFilter(new ArrayList<>(loader.stringMap().values()), runes);
+        restored.fromBytes(bytes);
+        assertEquals(filter.getFilteredTypes(), restored.getFilteredTypes());
+        assertEquals(filter.getFilteredWords(), restored.getFilteredWords());
+        assertEquals(0.5f, restored.getProgressThreshold(), 0.0f);
+    }
+
+    @Test public void runewordFilterSortTest11()
+    {
+        /* A sort by progress binds to the runes as of when it began, even if they change before it runs. */
+        runes.addRunes(Stream.of(Rune.TIR, Rune.RAL));
+        sorter.sortBy(RunewordSorter.Sort.BY_PROGRESS);
+        final Stream<Runeword> pending = sorter.flatMap(filter.stream());
+        runes.addRunes(Stream.of(Rune.JAH, Rune.ITH, Rune.BER));
+        final List<Runeword> rws = pending.collect(Collectors.toList());
+        assertEquals(loader.fromString("leaf"), rws.get(rws.size() - 1));
+
+        sort();
+        assertEquals(loader.fromString("enigma"), sorted.get(sorted.size() - 1));
+    }
+
+    @Test public void runewordFilterSortTest12()
+    {
+        /* A stream binds to the preferences as of when it began, even if they change before it runs. */
+        runes.addRunes(Stream.of(Rune.TIR, Rune.RAL));
+        final Set<Runeword> words = filter.getFilteredWords();
+        final Stream<Runeword> pending = filter.stream();
+        assertTrue(filter.filter(loader.fromString("leaf")));
+        filter.setProgressThreshold(1.0f);
+        runes.addRunes(Stream.of(Rune.JAH, Rune.ITH, Rune.BER));
+
+        final List<Runeword> rws = pending.collect(Collectors.toList());
+        assertTrue(rws.contains(loader.fromString("leaf")));
+        assertFalse(rws.contains(loader.fromString("enigma")));
+        assertTrue(words.isEmpty());
+        assertEquals(Collections.singleton(loader.fromString("enigma")), filter.stream().collect(Collectors.toSet()));
+        assertFalse(filter.filter(loader.fromString("leaf")));
+        assertEquals(2, filter.stream().count());
+    }
+
+    @Test public void runewordCatalogTest1() throws Exception
+    {
+        /* An overlay selects exactly what a filter with the same preferences streams. */
+        runes.addRunes(Stream.of(Rune.TIR, Rune.RAL, Rune.ORT, Rune.TAL, Rune.ETH));
+        filter.filter(ItemType.POLEARM);
+        filter.filter(ItemType.STAFF);
+        filter.filter(loader.fromString("leaf"));
+        filter.setProgressThreshold(0.2f);
+
+        assertSame(RunewordCatalog.shared(), RunewordCatalog.shared());
+        final RunewordCatalog catalog = new RunewordCatalog(loader.stringMap().values());
+        final FilterOverlay overlay = FilterOverlay.DEFAULT
+                .toggle(ItemType.POLEARM).toggle(ItemType.STAFF)
+                .toggle(loader.fromString("leaf")).withProgressThreshold(0.2f);
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(filter.toBytes()));
+        in.skipBytes(Integer.BYTES + Short.BYTES); // Binary header.
+        final FilterOverlay saved = FilterOverlay.read(in);
+        assertEquals(overlay, saved);
+        assertEquals(overlay.hashCode(), saved.hashCode());
+
+        final Set<Runeword> expected = filter.stream().collect(Collectors.toSet());
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, catalog.stream(overlay, runes).collect(Collectors.toSet()));
+
+        /* Many overlays share one progress vector. */
+        final double[] progress = catalog.progress(runes);
+        assertEquals(expected, catalog.stream(catalog.select(saved, progress)).collect(Collectors.toSet()));
+        assertTrue(catalog.stream(catalog.select(overlay.withProgressThreshold(1.0f), progress))
+                .allMatch(rw -> runes.progressTowards(rw) == 1.0));
+        assertEquals(FilterOverlay.DEFAULT, overlay.toggle(loader.fromString("leaf")).toggle(ItemType.STAFF)
+                .toggle(ItemType.POLEARM).withProgressThreshold(0.15f));
+    }
+
+    @Test public void runewordFilterSortTest13()
+    {
+        /* Three Eld cube into the Tir which, with an El, completes Steel. */
+        runes.addRunes(Stream.of(Rune.EL, Rune.ELD, Rune.ELD, Rune.ELD));
+        filter.setProgressThreshold(1.0f);
+        assertFalse(filter.stream().anyMatch(rw -> rw == loader.fromString("steel")));
+        filter.setCountingUpgrades(true);
+        assertTrue(filter.isCountingUpgrades());
+        assertTrue(filter.stream().anyMatch(rw -> rw == loader.fromString("steel")));
+
+        filter.setProgressThreshold(0.0f);
+        sorter.sortBy(RunewordSorter.Sort.BY_PROGRESS);
+        sorter.setCountingUpgrades(true);
+        sort();
+        assertEquals(loader.fromString("steel"), sorted.get(sorted.size() - 1));
+    }
+
+    @Test public void runewordFilterSortTest14() throws Exception
+    {
+        /* Fixture was written through Java serialization, before the binary save format existed. */
+        try (final ObjectInputStream ois = new ObjectInputStream(
+                RunewordFilterSortTest.class.getResourceAsStream("/legacy/RunewordFilter.ser")))
+        {
+            final RunewordFilter legacy = (RunewordFilter)ois.readObject();
+            assertEquals(EnumSet.of(ItemType.HELM, ItemType.SWORD), legacy.getFilteredTypes());
+            assertTrue(legacy.getFilteredWords().isEmpty());
+            assertEquals(0.5f, legacy.getProgressThreshold(), 0.0f);
+            filter.fromBytes(legacy.toBytes());
+            assertEquals(legacy.getFilteredTypes(), filter.getFilteredTypes());
+            assertEquals(0.5f, filter.getProgressThreshold(), 0.0f);
+        }
+    }
 }
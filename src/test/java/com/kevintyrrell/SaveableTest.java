@@ -0,0 +1,405 @@
+/*
+ *     Application which tracks Runeword progress in the video game Diablo 2.
+ *     Copyright (C) 2021  Kevin Tyrrell
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kevintyrrell;
+
+import com.kevintyrrell.model.diablo.rune.MappedRuneMap;
+import com.kevintyrrell.model.diablo.rune.Rune;
+import com.kevintyrrell.model.diablo.rune.RuneJournal;
+import com.kevintyrrell.model.diablo.rune.RuneMap;
+import com.kevintyrrell.model.diablo.runeword.RunewordFilter;
+import com.kevintyrrell.model.diablo.runeword.RunewordLoader;
+import com.kevintyrrell.model.profile.Profile;
+import com.kevintyrrell.model.profile.ProfileRepository;
+import com.kevintyrrell.model.util.SaveGroup;
+import com.kevintyrrell.model.util.SaveScheduler;
+import com.kevintyrrell.model.util.Saveable;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit testing class.
+ *
+ * @since 3.0
+ */
+public class SaveableTest
+{
+    /* Sub-directory of the save directory used exclusively by tests. */
+    private static final String TEST_DIRECTORY = "test/";
+
+    @After public void tearDown() throws IOException
+    {
+        final Path dir = Paths.get(Saveable.SAVE_DIRECTORY, TEST_DIRECTORY);
+        if (!Files.exists(dir)) return;
+        try (final Stream<Path> paths = Files.walk(dir))
+        {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test public void saveSchedulerTest1() throws IOException
+    {
+        final String filename = TEST_DIRECTORY + "scheduled";
+        final RuneMap runes = new RuneMap();
+        try (final SaveScheduler scheduler = new SaveScheduler(TEST_DIRECTORY, 1, TimeUnit.HOURS))
+        {
+            for (int i = 0; i < 10; i++)
+            {
+                runes.addRunes(Rune.TIR, 1);
+                scheduler.submit(filename, runes);
+            }
+            assertEquals(1, scheduler.getBacklog());
+            assertEquals(9, scheduler.getCoalescedCount());
+            assertEquals(0, scheduler.getWriteCount());
+            assertFalse(runes.getUnsavedChanges().get());
+        }
+
+        final RuneMap restored = new RuneMap();
+        assertTrue(restored.restore(filename));
+        assertEquals(Integer.valueOf(10), restored.getRunes().get(Rune.TIR));
+    }
+
+    @Test public void saveSchedulerTest2() throws IOException, InterruptedException
+    {
+        final RuneMap runes = new RuneMap();
+        try (final SaveScheduler scheduler = new SaveScheduler(TEST_DIRECTORY, 10, TimeUnit.MILLISECONDS))
+        {
+            runes.addRunes(Rune.EL, 2);
+            scheduler.submit(TEST_DIRECTORY + "debounced", runes);
+            for (int i = 0; i < 200 && scheduler.getWriteCount() == 0; i++)
+                Thread.sleep(10);
+            assertEquals(1, scheduler.getWriteCount());
+            assertEquals(0, scheduler.getBacklog());
+            assertTrue(scheduler.getMaxFlushLatency(TimeUnit.NANOSECONDS) > 0);
+        }
+    }
+
+    @Test public void saveSchedulerTest3() throws IOException, InterruptedException
+    {
+        /* A regular file in place of the directory fails the first flush. */
+        final Path blocker = Paths.get(Saveable.SAVE_DIRECTORY, TEST_DIRECTORY, "blocked");
+        Files.createDirectories(blocker.getParent());
+        Files.createFile(blocker);
+        final RuneMap runes = new RuneMap();
+        try (final SaveScheduler scheduler = new SaveScheduler(TEST_DIRECTORY, 10, TimeUnit.MILLISECONDS))
+        {
+            runes.addRunes(Rune.UM, 1);
+            scheduler.submit(TEST_DIRECTORY + "blocked/runes", runes);
+            for (int i = 0; i < 200 && scheduler.getFailureCount() == 0; i++)
+                Thread.sleep(10);
+            assertEquals(1, scheduler.getFailureCount());
+            assertEquals(0, scheduler.getFlushCount()); // Failed flushes wrote nothing.
+            Files.delete(blocker);
+            for (int i = 0; i < 300 && scheduler.getWriteCount() == 0; i++)
+                Thread.sleep(10); // Retried without another submission or flush.
+            assertEquals(1, scheduler.getWriteCount());
+            assertEquals(1, scheduler.getFlushCount());
+            assertEquals(0, scheduler.getBacklog());
+        }
+    }
+
+    @Test public void saveSchedulerTest4() throws IOException
+    {
+        /* A flush which crashed after its commit point: the manifest and temporary file remain. */
+        final String filename = TEST_DIRECTORY + "interrupted";
+        final RuneMap runes = new RuneMap();
+        runes.addRunes(Rune.LO, 3);
+        final Path target = Saveable.pathOf(filename, Saveable.BINARY_EXTENSION);
+        Files.createDirectories(target.getParent());
+        Files.write(target.resolveSibling(target.getFileName() + ".tmp"), runes.toBytes());
+        try (final DataOutputStream out = new DataOutputStream(Files.newOutputStream(
+                Saveable.pathOf(TEST_DIRECTORY + SaveScheduler.class.getSimpleName(), SaveGroup.MANIFEST_EXTENSION))))
+        {
+            out.writeInt(Saveable.MAGIC);
+            out.writeShort(1);
+            out.writeUTF(filename);
+        }
+
+        new SaveScheduler(TEST_DIRECTORY, 1, TimeUnit.HOURS).close();
+        final RuneMap restored = new RuneMap();
+        assertTrue(restored.restore(filename));
+        assertEquals(runes.getRunes(), restored.getRunes());
+    }
+
+    @Test public void saveSchedulerTest5() throws IOException
+    {
+        final Path blocker = Paths.get(Saveable.SAVE_DIRECTORY, TEST_DIRECTORY, "blocked");
+        Files.createDirectories(blocker.getParent());
+        Files.createFile(blocker);
+        final RuneMap runes = new RuneMap();
+        runes.addRunes(Rune.CHAM, 1);
+        final SaveScheduler scheduler = new SaveScheduler(TEST_DIRECTORY, 1, TimeUnit.HOURS);
+        scheduler.submit(TEST_DIRECTORY + "blocked/runes", runes);
+        try
+        {
+            scheduler.close();
+            fail();
+        }
+        catch (final IOException expected) { }
+        assertEquals(1, scheduler.getBacklog()); // Reported, never dropped.
+
+        Files.delete(blocker);
+        scheduler.close();
+        assertEquals(0, scheduler.getBacklog());
+        assertEquals(1, scheduler.getWriteCount());
+    }
+
+    @Test public void runeJournalTest1() throws IOException
+    {
+        final String filename = TEST_DIRECTORY + "journaled";
+        final RuneMap runes = new RuneMap();
+        try (final RuneJournal journal = new RuneJournal(filename, runes, 8))
+        {
+            runes.addRunes(Stream.of(Rune.BER, Rune.JAH, Rune.ITH));
+            runes.tossRunes(Rune.ITH, 1);
+            journal.commit();
+            assertEquals(4, journal.getDurableSequence());
+            for (int i = 0; i < 10; i++)
+                runes.addRunes(Rune.EL, 1); // Crosses the compaction threshold on commit.
+        }
+
+        /* Torn trailing record, as if the process crashed mid-append. */
+        Files.write(Saveable.pathOf(filename, RuneJournal.JOURNAL_EXTENSION),
+                new byte[] { (byte)Rune.ZOD.ordinal(), 0 }, StandardOpenOption.APPEND);
+
+        final RuneMap recovered = new RuneMap();
+        try (final RuneJournal journal = new RuneJournal(filename, recovered, 8))
+        {
+            assertEquals(runes.getRunes(), recovered.getRunes());
+            assertEquals(14, journal.getSequence());
+            recovered.addRunes(Rune.ZOD, 1);
+        }
+
+        final RuneMap again = new RuneMap();
+        try (final RuneJournal ignored = new RuneJournal(filename, again))
+        {
+            assertEquals(Integer.valueOf(1), again.getRunes().get(Rune.ZOD));
+            assertEquals(Integer.valueOf(10), again.getRunes().get(Rune.EL));
+            assertNull(again.getRunes().get(Rune.ITH));
+        }
+    }
+
+    @Test public void runeJournalTest2() throws IOException
+    {
+        final RuneMap runes = new RuneMap();
+        try (final RuneJournal journal = new RuneJournal(TEST_DIRECTORY + "journaled", runes))
+        {
+            try
+            {
+                runes.addRunes(Stream.of(Rune.GUL, Rune.VEX).map(r ->
+                {
+                    if (r == Rune.VEX) throw new IllegalStateException();
+                    return r;
+                }));
+                fail();
+            }
+            catch (final IllegalStateException expected) { }
+            assertEquals(0, journal.getSequence()); // Nothing journaled which was never published.
+            assertTrue(runes.getRunes().isEmpty());
+            runes.addRunes(Stream.of(Rune.GUL, Rune.GUL, Rune.VEX));
+            assertEquals(2, journal.getSequence());
+        }
+    }
+
+    @Test public void runeJournalTest3() throws Exception
+    {
+        final int writers = 4;
+        final ExecutorService pool = Executors.newFixedThreadPool(writers);
+        try
+        {
+            for (int round = 0; round < 10; round++)
+            {
+                final String filename = TEST_DIRECTORY + "compacted" + round;
+                final RuneMap runes = new RuneMap();
+                try (final RuneJournal journal = new RuneJournal(filename, runes, Integer.MAX_VALUE))
+                {
+                    /* Every compaction, including the last, races the writers. */
+                    final AtomicBoolean done = new AtomicBoolean();
+                    final List<Future<?>> futures = new ArrayList<>();
+                    for (int w = 0; w < writers; w++)
+                    {
+                        final Rune rune = Rune.extension.fromOrdinal(w);
+                        futures.add(pool.submit(() ->
+                        {
+                            for (int i = 0; !done.get(); i++)
+                            {
+                                runes.addRunes(rune, 2);
+                                runes.tossRunes(rune, 1);
+                                if (i % 50 == 0) journal.commit();
+                            }
+                            return null;
+                        }));
+                    }
+                    for (int i = 0; i < 5; i++)
+                        journal.compact();
+                    done.set(true);
+                    for (final Future<?> future : futures)
+                        future.get();
+                }
+
+                final RuneMap recovered = new RuneMap();
+                try (final RuneJournal ignored = new RuneJournal(filename, recovered))
+                {
+                    assertEquals(runes.getRunes(), recovered.getRunes()); // No change is applied twice.
+                }
+            }
+        }
+        finally { pool.shutdown(); }
+    }
+
+    @Test public void saveGroupTest1()
+    {
+        final RunewordLoader loader = new RunewordLoader();
+        final RuneMap runes = new RuneMap();
+        final RunewordFilter filter = new RunewordFilter(new ArrayList<>(loader.stringMap().values()), runes);
+        runes.addRunes(Rune.SHAEL, 2);
+        filter.filter(loader.fromString("insight"));
+
+        final SaveGroup group = new SaveGroup(TEST_DIRECTORY + "group")
+                .add(TEST_DIRECTORY + "runes", runes)
+                .add(TEST_DIRECTORY + "filter", filter)
+                .add(TEST_DIRECTORY + "clean", new RuneMap()); // No unsaved changes, so not added.
+        assertEquals(2, group.size());
+        assertTrue(group.commit());
+        assertEquals(0, group.size());
+        assertFalse(Files.exists(Saveable.pathOf(TEST_DIRECTORY + "group", SaveGroup.MANIFEST_EXTENSION)));
+
+        final RuneMap restoredRunes = new RuneMap();
+        final RunewordFilter restoredFilter = new RunewordFilter(new ArrayList<>(loader.stringMap().values()), runes);
+        assertTrue(restoredRunes.restore(TEST_DIRECTORY + "runes"));
+        assertTrue(restoredFilter.restore(TEST_DIRECTORY + "filter"));
+        assertEquals(runes.getRunes(), restoredRunes.getRunes());
+        assertEquals(filter.getFilteredWords(), restoredFilter.getFilteredWords());
+    }
+
+    @Test public void profileRepositoryTest1() throws IOException
+    {
+        final RunewordLoader loader = new RunewordLoader();
+        final ProfileRepository repo = new ProfileRepository(TEST_DIRECTORY + "profiles",
+                new ArrayList<>(loader.stringMap().values()), 2);
+        repo.get("alice").getRunes().addRunes(Rune.BER, 1);
+        repo.get("bob").getFilter().setProgressThreshold(0.5f);
+        assertSame(repo.get("alice"), repo.get("alice"));
+        repo.get("carol"); // Evicts bob, the least recently used.
+        assertEquals(2, repo.size());
+        assertEquals(1, repo.getEvictionCount());
+
+        final Profile bob = repo.get("bob"); // Evicts alice.
+        assertEquals(0.5f, bob.getFilter().getProgressThreshold(), 0.0f);
+        assertFalse(bob.hasUnsavedChanges());
+        assertEquals(Integer.valueOf(1), repo.get("alice").getRunes().getRunes().get(Rune.BER));
+        assertEquals(2, repo.getHitCount());
+        assertEquals(5, repo.getMissCount());
+        assertEquals(2.0 / 7, repo.getHitRate(), 1e-9);
+        repo.close();
+    }
+
+    @Test public void profileRepositoryTest3() throws IOException
+    {
+        /* A regular file in place of the root fails every write-back. */
+        final Path blocker = Paths.get(Saveable.SAVE_DIRECTORY, TEST_DIRECTORY, "blocked");
+        Files.createDirectories(blocker.getParent());
+        Files.createFile(blocker);
+        final ProfileRepository repo = new ProfileRepository(TEST_DIRECTORY + "blocked", new ArrayList<>(), 1);
+        final Profile alice = repo.get("alice");
+        alice.getRunes().addRunes(Rune.MAL, 2);
+        repo.get("bob"); // Evicts alice, whose write-back fails.
+        assertEquals(1, repo.getFailedWriteBackCount());
+        assertEquals(1, repo.getPendingWriteBackCount());
+        assertSame(alice, repo.get("alice")); // Not re-read from its stale save.
+        assertEquals(0, repo.getPendingWriteBackCount());
+
+        repo.get("bob");
+        Files.delete(blocker);
+        assertTrue(repo.saveAll());
+        assertEquals(0, repo.getPendingWriteBackCount());
+        final ProfileRepository reopened = new ProfileRepository(TEST_DIRECTORY + "blocked", new ArrayList<>(), 1);
+        assertEquals(Integer.valueOf(2), reopened.get("alice").getRunes().getRunes().get(Rune.MAL));
+    }
+
+    @Test public void profileRepositoryTest4() throws IOException
+    {
+        final Path blocker = Paths.get(Saveable.SAVE_DIRECTORY, TEST_DIRECTORY, "blocked");
+        Files.createDirectories(blocker.getParent());
+        Files.createFile(blocker);
+        final ProfileRepository repo = new ProfileRepository(TEST_DIRECTORY + "blocked", new ArrayList<>(), 4);
+        final Profile alice = repo.get("alice");
+        alice.getRunes().addRunes(Rune.OHM, 1);
+        try
+        {
+            repo.close();
+            fail();
+        }
+        catch (final IOException expected) { }
+        assertEquals(0, repo.size());
+        assertEquals(1, repo.getPendingWriteBackCount()); // Reported, never dropped.
+        assertSame(alice, repo.get("alice"));
+
+        Files.delete(blocker);
+        repo.close();
+        assertEquals(0, repo.getPendingWriteBackCount());
+    }
+
+    @Test public void mappedRuneMapTest1() throws IOException
+    {
+        final RuneMap runes = new RuneMap();
+        runes.addRunes(Rune.IST, 3);
+        runes.addRunes(Rune.EL, 1);
+        Saveable.write(TEST_DIRECTORY + "mapped", runes.toBytes());
+
+        try (final MappedRuneMap mapped = new MappedRuneMap(TEST_DIRECTORY + "mapped"))
+        {
+            assertEquals(runes.getRunes(), mapped.getRunes()); // Migrated upon creation.
+            assertFalse(mapped.getUnsavedChanges().get());
+            mapped.tossRunes(Rune.IST, 2);
+            assertTrue(mapped.save());
+            assertFalse(mapped.getUnsavedChanges().get());
+        }
+        try (final MappedRuneMap mapped = new MappedRuneMap(TEST_DIRECTORY + "mapped", 10, TimeUnit.MILLISECONDS))
+        {
+            assertFalse(mapped.restore()); // The now stale save file is never migrated again.
+            runes.tossRunes(Rune.IST, 2);
+            assertEquals(runes.getRunes(), mapped.getRunes());
+            assertEquals(runes.appraise(), mapped.appraise(), 1e-9);
+            assertArrayEquals(runes.toBytes(), mapped.toBytes());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void profileRepositoryTest2()
+    {
+        new ProfileRepository(TEST_DIRECTORY + "profiles", new ArrayList<>(), 1).get("../escape");
+    }
+}